@@ -0,0 +1,51 @@
+package bench;
+
+import model.EditQueue;
+import model.TextEditorModel;
+
+import javax.swing.*;
+
+/**
+ * Streams appends into an {@link EditQueue} from a producer thread and reports how many per second reach the
+ * document, with statistics attached and edits recorded for undo, as in the editor.
+ */
+public class EditQueueBench {
+  private static final double TARGET = 100_000;
+
+  public static void main(String[] args) throws Exception {
+    int appends = args.length > 0 ? Integer.parseInt(args[0]) : 3_000_000;
+    TextEditorModel[] models = new TextEditorModel[1];
+    SwingUtilities.invokeAndWait(() -> {
+      models[0] = new TextEditorModel("");
+      models[0].getStatistics();
+    });
+    TextEditorModel model = models[0];
+    EditQueue queue = new EditQueue(model);
+
+    long start = System.nanoTime();
+    Thread producer = new Thread(() -> {
+      try {
+        for(int i = 0; i < appends; i++) {
+          queue.append(i % 10 == 9 ? "line\n" : "word ");
+        }
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "producer");
+    producer.start();
+    producer.join();
+    while(queue.getAppliedCount() + queue.getRejectedCount() < appends) {
+      Thread.sleep(1);
+    }
+    long end = System.nanoTime();
+
+    long[] length = new long[1];
+    SwingUtilities.invokeAndWait(() -> length[0] = model.getLength());
+    if(length[0] != appends * 5L) throw new IllegalStateException("Appends went missing.");
+
+    double rate = appends * 1e9 / (end - start);
+    System.out.printf("%d appends in %d ms, %.0f/s (queue measured %.0f/s), target %.0f/s %s%n", appends,
+        (end - start) / 1_000_000, rate, queue.getThroughput(), TARGET, rate >= TARGET ? "met" : "missed");
+    System.exit(0);
+  }
+}
@@ -0,0 +1,42 @@
+package bench;
+
+import model.io.DocumentLoader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares {@link DocumentLoader} decoding its chunks one after another with decoding them in parallel, on a
+ * generated file of the given number of megabytes, 64 by default, and prints the best time of several runs for
+ * each. The serial load runs inside a pool with a single worker, which its parallel stream then keeps to.
+ */
+public class LoaderBench {
+  public static void main(String[] args) throws Exception {
+    int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    StringBuilder text = new StringBuilder(megabytes << 20);
+    for(int line = 0; text.length() < megabytes << 20; line++) {
+      text.append("line ").append(line).append("\tsome text, \u00e9t\u00e9 \u2603 and \uD83D\uDE00 more text\r\n");
+    }
+    byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+    System.out.printf("%d MB, %d processors%n", bytes.length >> 20, Runtime.getRuntime().availableProcessors());
+    ForkJoinPool single = new ForkJoinPool(1);
+    long serial = Long.MAX_VALUE, parallel = Long.MAX_VALUE;
+    for(int run = 0; run < 5; run++) {
+      long start = System.nanoTime();
+      DocumentLoader.LoadedText serialText = single.submit(() -> DocumentLoader.load(bytes)).get();
+      long middle = System.nanoTime();
+      DocumentLoader.LoadedText parallelText = DocumentLoader.load(bytes);
+      long end = System.nanoTime();
+      if(!serialText.getText().equals(parallelText.getText()) || !Arrays.equals(serialText.getLineLengths(), parallelText.getLineLengths())) {
+        throw new IllegalStateException("Serial and parallel loads differ.");
+      }
+
+      serial = Math.min(serial, middle - start);
+      parallel = Math.min(parallel, end - middle);
+    }
+    single.shutdown();
+    System.out.printf("serial %d ms, parallel %d ms%n", serial / 1_000_000, parallel / 1_000_000);
+  }
+}
@@ -1,41 +1,67 @@
 package components;
 
 import plugins.Plugin;
+import plugins.PluginExecutor;
+import plugins.PluginRegistry;
+import model.DocumentStatistics;
 import model.Location;
 import model.LocationRange;
 import model.TextEditorModel;
 import model.clipboard.ClipboardObserver;
 import model.clipboard.ClipboardStack;
+import model.io.DocumentLoader;
+import model.io.DocumentSaver;
+import model.io.LineIndexer;
+import model.io.MappedTextBuffer;
 import model.manager.StackStatusListener;
 import model.manager.UndoManager;
+import model.search.RegexSearch;
+import model.search.TextSearch;
+import model.text.StringTextBuffer;
 import observers.CursorObserver;
+import observers.Delivery;
 import observers.SelectionObserver;
+import observers.StatisticsObserver;
 import observers.TextObserver;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class Frame extends JFrame {
   private static final Path pluginFolder = Path.of("./plugins/");
+  private static final long MAPPED_FILE_SIZE = 16L << 20;
   private final TextEditorModel model;
   private Path savePath;
   private boolean ctrlPressed;
   private Location dragStartLocation;
   private int clickCount;
   private final ClipboardStack clipboard;
+  private final DocumentSaver saver;
+  private LineIndexer indexer;
+  private TextSearch search;
+  private Iterator<LocationRange> matches;
+  private long matchesVersion;
+  private LocationRange lastMatch;
+  private RegexSearch regexSearch;
+  private RegexSearch.Task regexTask;
+  private List<LocationRange> regexMatches;
+  private boolean regexDone;
+  private boolean regexSelectPending;
+  private final JLabel searchStatus = new JLabel();
+  private final PluginExecutor pluginExecutor;
+  private PluginExecutor.Task pluginTask;
+  private final JLabel pluginStatus = new JLabel();
 
   private final Action ctrlOff = new AbstractAction() {
     @Override
@@ -93,8 +119,8 @@ public class Frame extends JFrame {
   private final Action moveToEnd = new AbstractAction() {
     @Override
     public void actionPerformed(ActionEvent e) {
-      List<String> lines = model.getLines();
-      model.moveCursor(new Location(lines.size()-1, lines.get(lines.size()-1).length()));
+      int lastRow = model.getLineCount()-1;
+      model.moveCursor(new Location(lastRow, model.getLineLength(lastRow)));
       model.setSelectionRange(null);
     }
   };
@@ -160,8 +186,8 @@ public class Frame extends JFrame {
   private final Action clear = new AbstractAction() {
     @Override
     public void actionPerformed(ActionEvent e) {
-      List<String> lines = model.getLines();
-      LocationRange range = new LocationRange(new Location(0,0), new Location(lines.size()-1, lines.get(lines.size()-1).length()));
+      int lastRow = model.getLineCount()-1;
+      LocationRange range = new LocationRange(new Location(0,0), new Location(lastRow, model.getLineLength(lastRow)));
 
       model.deleteRange(range);
       model.setSelectionRange(null);
@@ -301,6 +327,103 @@ public class Frame extends JFrame {
       model.insert(text);
     }
   };
+  private final Action find = new AbstractAction() {
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      JTextField query = new JTextField(search == null ? "" : search.getPattern(), 24);
+      JCheckBox matchCase = new JCheckBox("Match case", search != null && !search.isIgnoreCase());
+      JCheckBox wholeWord = new JCheckBox("Whole word", search != null && search.isWholeWord());
+      JCheckBox regex = new JCheckBox("Regular expression", regexSearch != null);
+      if(regexSearch != null) query.setText(regexSearch.getPattern().pattern());
+      JPanel panel = new JPanel(new GridLayout(4, 1));
+      panel.add(query);
+      panel.add(matchCase);
+      panel.add(wholeWord);
+      panel.add(regex);
+
+      int result = JOptionPane.showConfirmDialog(Frame.this, panel, "Find", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+      if(result != JOptionPane.OK_OPTION || query.getText().isEmpty()) return;
+
+      if(regexTask != null) regexTask.cancel();
+      regexTask = null;
+      searchStatus.setText("");
+      if(regex.isSelected()) {
+        Pattern pattern;
+        try {
+          pattern = Pattern.compile(wholeWord.isSelected() ? "\\b(?:" + query.getText() + ")\\b" : query.getText(),
+              matchCase.isSelected() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch(PatternSyntaxException ex) {
+          JOptionPane.showMessageDialog(Frame.this, ex.getDescription(), "Invalid regular expression", JOptionPane.ERROR_MESSAGE);
+          return;
+        }
+        search = null;
+        regexSearch = new RegexSearch(pattern);
+      } else {
+        regexSearch = null;
+        search = new TextSearch(query.getText(), !matchCase.isSelected(), wholeWord.isSelected());
+        matches = null;
+      }
+      findNext.actionPerformed(e);
+    }
+  };
+  private final Action findNext = new AbstractAction() {
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      if(regexSearch != null) {
+        if(regexTask == null || regexTask.getSnapshot().getVersion() != model.getVersion()) startRegexSearch();
+        regexSelectPending = true;
+        selectRegexMatch();
+        return;
+      }
+      if(search == null) {
+        find.actionPerformed(e);
+        return;
+      }
+
+      LocationRange match = nextMatch();
+      if(match == null) {
+        JOptionPane.showMessageDialog(Frame.this, "No matches for \"" + search.getPattern() + "\".", "Find", JOptionPane.INFORMATION_MESSAGE);
+        return;
+      }
+      if(!match.equals(model.getSelectionRange())) model.setSelectionRange(match);
+      model.moveCursor(match.getEnd());
+    }
+  };
+  private final Action replaceAll = new AbstractAction() {
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      JTextField query = new JTextField(search == null ? "" : search.getPattern(), 24);
+      JTextField replacement = new JTextField(24);
+      JCheckBox matchCase = new JCheckBox("Match case", search != null && !search.isIgnoreCase());
+      JCheckBox wholeWord = new JCheckBox("Whole word", search != null && search.isWholeWord());
+      JPanel panel = new JPanel(new GridLayout(6, 1));
+      panel.add(new JLabel("Find:"));
+      panel.add(query);
+      panel.add(new JLabel("Replace with:"));
+      panel.add(replacement);
+      panel.add(matchCase);
+      panel.add(wholeWord);
+
+      int result = JOptionPane.showConfirmDialog(Frame.this, panel, "Replace All", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+      if(result != JOptionPane.OK_OPTION || query.getText().isEmpty()) return;
+
+      if(regexTask != null) regexTask.cancel();
+      regexTask = null;
+      regexSearch = null;
+      search = new TextSearch(query.getText(), !matchCase.isSelected(), wholeWord.isSelected());
+      matches = null;
+
+      model.setSelectionRange(null);
+      int count = model.replaceAll(search.find(model), replacement.getText());
+      searchStatus.setText(String.format("Replaced: %d", count));
+    }
+  };
+  private final Action cancelPlugin = new AbstractAction() {
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      if(pluginTask != null) pluginTask.cancel();
+    }
+  };
   private final Action undo = new AbstractAction() {
     @Override
     public void actionPerformed(ActionEvent e) {
@@ -323,6 +446,8 @@ public class Frame extends JFrame {
     this.dragStartLocation = null;
     this.clickCount = 0;
     this.clipboard = new ClipboardStack();
+    this.saver = new DocumentSaver();
+    this.pluginExecutor = new PluginExecutor(model, clipboard);
 
     setTitle("TextEditor");
     setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
@@ -355,6 +480,10 @@ public class Frame extends JFrame {
     editMenu.add(new JMenuItem(pasteRemove));
     editMenu.add(new JMenuItem(deleteSelection));
     editMenu.add(new JMenuItem(clear));
+    editMenu.addSeparator();
+    editMenu.add(new JMenuItem(find));
+    editMenu.add(new JMenuItem(findNext));
+    editMenu.add(new JMenuItem(replaceAll));
     menuBar.add(editMenu);
 
     JMenu moveMenu = new JMenu("Move");
@@ -369,20 +498,35 @@ public class Frame extends JFrame {
     Container cp = this.getContentPane();
     cp.setLayout(new BorderLayout());
     TextEditor textEditor = new TextEditor(model);
-    model.addCursorObserver(location -> textEditor.repaint());
-    model.addTextObserver(textEditor::repaint);
-    model.addSelectionObserver(range -> textEditor.repaint());
 
-    cp.add(textEditor, BorderLayout.CENTER);
+    JMenu viewMenu = new JMenu("View");
+    JCheckBoxMenuItem cacheLines = new JCheckBoxMenuItem("Cache Rendered Lines");
+    cacheLines.addActionListener(e -> textEditor.setLineImageCaching(cacheLines.isSelected()));
+    JCheckBoxMenuItem wrapLines = new JCheckBoxMenuItem("Wrap Lines");
+    wrapLines.addActionListener(e -> textEditor.setLineWrap(wrapLines.isSelected()));
+    viewMenu.add(wrapLines);
+    viewMenu.add(cacheLines);
+    menuBar.add(viewMenu);
+
+    JScrollPane scrollPane = new JScrollPane(textEditor);
+    scrollPane.setBorder(BorderFactory.createEmptyBorder());
+    cp.add(scrollPane, BorderLayout.CENTER);
+
+    Minimap minimap = new Minimap(model, textEditor);
+    scrollPane.getViewport().addChangeListener(e -> minimap.repaint());
+    cp.add(minimap, BorderLayout.LINE_END);
 
     JPanel statusBar = new JPanel();
-    statusBar.setLayout(new GridLayout(1, 2));
+    statusBar.setLayout(new GridLayout(1, 4));
     cp.add(statusBar, BorderLayout.PAGE_END);
 
     JLabel left = new JLabel(String.format("Row: %d, Col: %d", model.getCursorLocation().getRow()+1, model.getCursorLocation().getColumn()+1));
-    JLabel right = new JLabel(String.format("Lines: %d", model.getLines().size()));
+    DocumentStatistics statistics = model.getStatistics();
+    JLabel right = new JLabel(String.format("Lines: %d, Words: %d, Chars: %d", statistics.getLineCount(), statistics.getWordCount(), statistics.getCharCount()));
     statusBar.add(left);
     statusBar.add(right);
+    statusBar.add(searchStatus);
+    statusBar.add(pluginStatus);
     statusBar.setBorder(BorderFactory.createMatteBorder(1, 0, 0, 0, Color.BLACK));
 
     model.addCursorObserver(new CursorObserver() {
@@ -390,11 +534,17 @@ public class Frame extends JFrame {
       public void updateCursorLocation(Location loc) {
         left.setText(String.format("Row: %d, Col: %d", loc.getRow()+1, loc.getColumn()+1));
       }
-    });
+    }, Delivery.COALESCED);
     model.addTextObserver(new TextObserver() {
       @Override
       public void updateText() {
-        right.setText(String.format("Lines: %d", model.getLines().size()));
+        right.setText(String.format("Lines: %d, Words: %d, Chars: %d", statistics.getLineCount(), statistics.getWordCount(), statistics.getCharCount()));
+      }
+    }, Delivery.COALESCED);
+    statistics.addStatisticsObserver(new StatisticsObserver() {
+      @Override
+      public void updateStatistics(DocumentStatistics statistics) {
+        right.setText(String.format("Lines: %d, Words: %d, Chars: %d", statistics.getLineCount(), statistics.getWordCount(), statistics.getCharCount()));
       }
     });
 
@@ -403,6 +553,85 @@ public class Frame extends JFrame {
     initMouseRegistration(textEditor);
   }
 
+  /**
+   * Continues the last search while the document and selection are unchanged since the last match, otherwise
+   * starts a new one at the cursor. Reaching the end of the document wraps around to its start.
+   */
+  private LocationRange nextMatch() {
+    boolean continuing = matches != null && matchesVersion == model.getVersion() && Objects.equals(model.getSelectionRange(), lastMatch);
+    if(!continuing) {
+      matches = search.find(model, model.getCursorLocation());
+      matchesVersion = model.getVersion();
+    }
+    if(!matches.hasNext()) matches = search.find(model);
+
+    lastMatch = matches.hasNext() ? matches.next() : null;
+    return lastMatch;
+  }
+
+  /**
+   * Searches a snapshot of the document in the background. Matches are collected on the event dispatch thread as
+   * they stream in, and a pending Find Next is answered as soon as a match after the cursor shows up.
+   */
+  private void startRegexSearch() {
+    if(regexTask != null) regexTask.cancel();
+
+    List<LocationRange> found = new ArrayList<>();
+    regexMatches = found;
+    regexDone = false;
+    searchStatus.setText("Searching...");
+    regexTask = regexSearch.search(model.snapshot(), new RegexSearch.MatchListener() {
+      @Override
+      public void matchesFound(List<LocationRange> matches) {
+        SwingUtilities.invokeLater(() -> {
+          if(found != regexMatches) return;
+
+          found.addAll(matches);
+          searchStatus.setText(String.format("Matches: %d...", found.size()));
+          if(regexSelectPending) selectRegexMatch();
+        });
+      }
+
+      @Override
+      public void searchFinished() {
+        SwingUtilities.invokeLater(() -> {
+          if(found != regexMatches) return;
+
+          regexDone = true;
+          searchStatus.setText(String.format("Matches: %d", found.size()));
+          if(regexSelectPending) selectRegexMatch();
+        });
+      }
+    });
+  }
+
+  private void selectRegexMatch() {
+    Location cursor = model.getCursorLocation();
+    LocationRange selected = model.getSelectionRange();
+    LocationRange match = null;
+    for(LocationRange candidate : regexMatches) {
+      int order = candidate.getStart().compareTo(cursor);
+      if(order > 0 || order == 0 && !candidate.equals(selected)) {
+        match = candidate;
+        break;
+      }
+    }
+
+    if(match == null) {
+      if(!regexDone) return;
+      if(regexMatches.isEmpty()) {
+        regexSelectPending = false;
+        JOptionPane.showMessageDialog(Frame.this, "No matches for \"" + regexSearch.getPattern().pattern() + "\".", "Find", JOptionPane.INFORMATION_MESSAGE);
+        return;
+      }
+      match = regexMatches.get(0);
+    }
+
+    regexSelectPending = false;
+    if(!match.equals(selected)) model.setSelectionRange(match);
+    model.moveCursor(match.getEnd());
+  }
+
   private void initActions() {
     open.putValue(
         Action.NAME,
@@ -461,6 +690,30 @@ public class Frame extends JFrame {
         Action.MNEMONIC_KEY,
         KeyEvent.VK_Y);
     redo.setEnabled(false);
+
+    find.putValue(
+        Action.NAME,
+        "Find...");
+    find.putValue(
+        Action.ACCELERATOR_KEY,
+        KeyStroke.getKeyStroke("control F"));
+    find.setEnabled(true);
+
+    findNext.putValue(
+        Action.NAME,
+        "Find Next");
+    findNext.putValue(
+        Action.ACCELERATOR_KEY,
+        KeyStroke.getKeyStroke("F3"));
+    findNext.setEnabled(true);
+
+    replaceAll.putValue(
+        Action.NAME,
+        "Replace All...");
+    replaceAll.putValue(
+        Action.ACCELERATOR_KEY,
+        KeyStroke.getKeyStroke("control H"));
+    replaceAll.setEnabled(true);
     UndoManager.instance().addRedoListener(new StackStatusListener() {
       @Override
       public void statusChanged(boolean empty) {
@@ -619,7 +872,6 @@ public class Frame extends JFrame {
     editor.getInputMap().put((KeyStroke) selectDown.getValue(Action.ACCELERATOR_KEY), "selectDown");
     editor.getActionMap().put("selectDown", selectDown);
 
-
     editor.addKeyListener(new KeyAdapter() {
       @Override
       public void keyPressed(KeyEvent e) {
@@ -670,13 +922,14 @@ public class Frame extends JFrame {
       @Override
       public void mousePressed(MouseEvent e) {
         clickCount++;
+        editor.requestFocusInWindow();
         model.setSelectionRange(null);
         dragStartLocation = null;
         model.moveCursor(editor.getPointerDocumentLocation(e.getX(), e.getY()));
 
         if(clickCount == 2) {
           Location mouseLocation = editor.getPointerDocumentLocation(e.getX(), e.getY());
-          String line = model.getLines().get(mouseLocation.getRow());
+          String line = model.getLine(mouseLocation.getRow());
           if(line.length() == 0) return;
           int endX, startX;
           startX = endX = Math.max(Math.min(mouseLocation.getColumn(), line.length()-1), 0);
@@ -705,10 +958,10 @@ public class Frame extends JFrame {
         if(clickCount == 3) {
           clickCount = 0;
           Location mouseLocation = editor.getPointerDocumentLocation(e.getX(), e.getY());
-          String line = model.getLines().get(mouseLocation.getRow());
+          String line = model.getLine(mouseLocation.getRow());
           model.setSelectionRange(new LocationRange(
               new Location(mouseLocation.getRow(), 0),
-              mouseLocation.getRow() < model.getLines().size()-1 ? new Location(mouseLocation.getRow()+1, 0) :  new Location(mouseLocation.getRow(), line.length()))
+              mouseLocation.getRow() < model.getLineCount()-1 ? new Location(mouseLocation.getRow()+1, 0) :  new Location(mouseLocation.getRow(), line.length()))
           );
           model.moveCursor(new Location(mouseLocation.getRow(), line.length()));
         }
@@ -717,7 +970,7 @@ public class Frame extends JFrame {
   }
 
   private void initPlugins(JMenu menu) {
-    List<Plugin> plugins = loadPlugins();
+    List<Plugin> plugins = new PluginRegistry(pluginFolder).scan();
 
     if(plugins.isEmpty()) menu.setEnabled(false);
 
@@ -725,13 +978,58 @@ public class Frame extends JFrame {
       Action a = new AbstractAction() {
         @Override
         public void actionPerformed(ActionEvent e) {
-          plugin.execute(model, UndoManager.instance(), clipboard);
+          runPlugin(plugin);
         }
       };
       a.putValue(Action.NAME, plugin.getName());
       a.putValue(Action.SHORT_DESCRIPTION, plugin.getDescription());
       menu.add(new JMenuItem(a));
     }
+
+    cancelPlugin.putValue(Action.NAME, "Cancel Plugin");
+    cancelPlugin.setEnabled(false);
+    menu.addSeparator();
+    menu.add(new JMenuItem(cancelPlugin));
+  }
+
+  /**
+   * Runs a plugin through the executor, showing its progress in the status bar. Another plugin can be started
+   * while one is running, Cancel Plugin then stops the latest one.
+   */
+  private void runPlugin(Plugin plugin) {
+    pluginStatus.setText(plugin.getName() + "...");
+    PluginExecutor.Task task = pluginExecutor.execute(plugin, new PluginExecutor.Listener() {
+      @Override
+      public void progressChanged(double done) {
+        pluginStatus.setText(String.format("%s: %d%%", plugin.getName(), Math.round(done * 100)));
+      }
+
+      @Override
+      public void finished(PluginExecutor.Outcome outcome) {
+        ended();
+        if(outcome == PluginExecutor.Outcome.APPLIED) pluginStatus.setText("");
+        else if(outcome == PluginExecutor.Outcome.CANCELLED) pluginStatus.setText(plugin.getName() + ": cancelled");
+        else pluginStatus.setText(plugin.getName() + ": document changed, nothing applied");
+      }
+
+      @Override
+      public void failed(Throwable e) {
+        ended();
+        pluginStatus.setText("");
+        JOptionPane.showMessageDialog(Frame.this, e.toString(), plugin.getName() + " failed", JOptionPane.ERROR_MESSAGE);
+      }
+
+      private void ended() {
+        if(pluginTask == null || !pluginTask.isDone()) return;
+
+        pluginTask = null;
+        cancelPlugin.setEnabled(false);
+      }
+    });
+    if(task.isDone()) return;
+
+    pluginTask = task;
+    cancelPlugin.setEnabled(true);
   }
 
   private void transferToClipboard(String content) {
@@ -760,28 +1058,69 @@ public class Frame extends JFrame {
   }
 
   private void loadDocument(Path path) {
-    try(Scanner scanner = new Scanner(path, StandardCharsets.UTF_8)) {
-      StringBuilder builder = new StringBuilder();
-      while(scanner.hasNextLine()) {
-        builder.append(scanner.nextLine());
-        if(scanner.hasNextLine()) builder.append("\n");
+    if(indexer != null) {
+      indexer.cancel();
+      try {
+        indexer.getBuffer().close();
+      } catch(IOException e) {
+        e.printStackTrace();
       }
+      indexer = null;
+      indexingFinished();
+    }
 
-      List<String> lines = model.getLines();
-      model.deleteRange(new LocationRange(new Location(0, 0), new Location(lines.size()-1, lines.get(lines.size()-1).length())));
-      model.insert(builder.toString());
+    try {
+      if(Files.size(path) >= MAPPED_FILE_SIZE) {
+        loadMappedDocument(path);
+        return;
+      }
     } catch(IOException e) {
       JOptionPane.showMessageDialog(this, "Couldn't read selected file.", "Reading error", JOptionPane.ERROR_MESSAGE);
+      return;
     }
+
+    try {
+      DocumentLoader.LoadedText loaded = DocumentLoader.load(path);
+      model.reset(new StringTextBuffer(loaded.getText()), loaded.getLineLengths());
+    } catch(IOException e) {
+      JOptionPane.showMessageDialog(this, "Couldn't read selected file.", "Reading error", JOptionPane.ERROR_MESSAGE);
+    }
+  }
+
+  private void loadMappedDocument(Path path) throws IOException {
+    MappedTextBuffer buffer = MappedTextBuffer.map(path);
+    model.reset(buffer, new int[] {0});
+
+    // indexed text is appended at the end of the document and saving would write only what is indexed so far,
+    // so editing and saving wait until the whole file is in
+    model.setEditable(false);
+    save.setEnabled(false);
+    indexer = new LineIndexer(buffer, (charStart, charEnd, lineLengths, last) -> SwingUtilities.invokeLater(() -> {
+      if(indexer == null || indexer.getBuffer() != buffer) return;
+
+      model.append(buffer, charStart, charEnd, lineLengths);
+      if(last) indexingFinished();
+    }));
+
+    Thread thread = new Thread(indexer, "line-indexer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void indexingFinished() {
+    model.setEditable(true);
+    save.setEnabled(true);
   }
 
   private void saveDocument(Path path) {
-    try(FileOutputStream output = new FileOutputStream(path.toFile(), false)) {
-      Iterator<String> iter = model.allLines();
-      while(iter.hasNext()) {
-        String line = iter.next();
-        output.write((iter.hasNext() ? line.concat("\n") : line).getBytes(StandardCharsets.UTF_8));
-      }
+    if(path == null) return;
+    if(!model.isEditable()) {
+      JOptionPane.showMessageDialog(this, "The file is still being loaded, save it once loading is done.", "Saving", JOptionPane.INFORMATION_MESSAGE);
+      return;
+    }
+
+    try {
+      saver.save(model, path);
     } catch(IOException e) {
       JOptionPane.showMessageDialog(this, "Couldn't save to selected file.", "Saving error", JOptionPane.ERROR_MESSAGE);
     }
@@ -812,29 +1151,4 @@ public class Frame extends JFrame {
     }
     return file.toPath();
   }
-
-  private List<Plugin> loadPlugins() {
-    List<Plugin> plugins = new ArrayList<>();
-    ClassLoader parent = this.getClass().getClassLoader();
-    File[] pluginFiles = pluginFolder.toFile().listFiles();
-    if(pluginFiles != null) {
-      for(File plugin : pluginFiles) {
-        try {
-          URLClassLoader newClassLoader = new URLClassLoader(
-              new URL[] {
-                  // Dodaj jedan direktorij (završava s /)
-                  pluginFolder.toFile().toURI().toURL(),
-                  // Dodaj jedan konkretan JAR (ne završava s /)
-                  plugin.toURI().toURL()
-              }, parent);
-          String name = plugin.getName().split("\\.")[0];
-          Class<Plugin> clazz = (Class<Plugin>) newClassLoader.loadClass("plugins."+name);
-          plugins.add(clazz.getConstructor().newInstance());
-        } catch(Exception e) {
-          e.printStackTrace();
-        }
-      }
-    }
-    return plugins;
-  }
 }
@@ -0,0 +1,96 @@
+package components;
+
+import model.TextEditorModel;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+
+/**
+ * Rendered lines kept as transparent image strips, so repainting a row that didn't change only copies its
+ * pixels. The strips are evicted least recently used first once their total size passes the memory limit,
+ * and the rows touched by an edit are dropped so only those are rendered again.
+ */
+public class LineImageCache {
+  public static final long DEFAULT_MEMORY_LIMIT = 32L << 20;
+  private static final int MAX_STRIP_WIDTH = 4096;
+  private final RowCache<BufferedImage> images;
+  private Font font;
+  private FontRenderContext context;
+  private long hits;
+  private long misses;
+
+  LineImageCache(TextEditorModel model) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+
+    this.images = new RowCache<>(DEFAULT_MEMORY_LIMIT, image -> 4L * image.getWidth() * image.getHeight());
+    this.hits = 0;
+    this.misses = 0;
+
+    model.addTextChangeObserver(images::textChanged);
+  }
+
+  /**
+   * Returns the strip of a row with the baseline at the font's ascent, or null for rows that are empty or too
+   * wide to be worth keeping. Those are drawn directly.
+   */
+  BufferedImage get(int row, LineLayoutCache.LineLayout layout, Graphics2D g) {
+    int width = layout.width() + 2;
+    if(layout.length() == 0 || width > MAX_STRIP_WIDTH) return null;
+
+    if(!g.getFont().equals(font) || !g.getFontRenderContext().equals(context)) {
+      images.clear();
+      font = g.getFont();
+      context = g.getFontRenderContext();
+    }
+
+    BufferedImage image = images.get(row);
+    if(image != null) {
+      hits++;
+      return image;
+    }
+
+    misses++;
+    FontMetrics metrics = g.getFontMetrics();
+    int height = metrics.getAscent() + metrics.getDescent();
+    GraphicsConfiguration configuration = g.getDeviceConfiguration();
+    image = configuration != null ?
+        configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT) :
+        new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+
+    Graphics2D imageGraphics = image.createGraphics();
+    imageGraphics.setRenderingHints(g.getRenderingHints());
+    imageGraphics.setColor(g.getColor());
+    imageGraphics.drawGlyphVector(layout.getGlyphs(), 0, metrics.getAscent());
+    imageGraphics.dispose();
+
+    images.put(row, image);
+    return image;
+  }
+
+  public long getMemoryLimit() {
+    return images.getCapacity();
+  }
+
+  public void setMemoryLimit(long bytes) {
+    images.setCapacity(bytes);
+  }
+
+  public long getMemoryUsed() {
+    return images.getWeight();
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public void clear() {
+    images.clear();
+    hits = 0;
+    misses = 0;
+  }
+}
@@ -0,0 +1,153 @@
+package components;
+
+import model.TextEditorModel;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+
+/**
+ * Keeps the glyphs and the x position of every column for recently shown lines, so painting and hit-testing
+ * don't measure the same prefixes over and over. Entries are keyed by row and dropped or shifted as soon as
+ * the model reports an edit, and the whole cache is dropped when the font or render context changes.
+ */
+class LineLayoutCache {
+  private static final int CAPACITY = 1024;
+  private final TextEditorModel model;
+  private final RowCache<LineLayout> layouts;
+  private Font font;
+  private FontRenderContext context;
+
+  LineLayoutCache(TextEditorModel model) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+
+    this.model = model;
+    this.layouts = new RowCache<>(CAPACITY, layout -> 1);
+
+    model.addTextChangeObserver(layouts::textChanged);
+  }
+
+  LineLayout get(int row, Font font, FontRenderContext context) {
+    if(!font.equals(this.font) || !context.equals(this.context)) {
+      layouts.clear();
+      this.font = font;
+      this.context = context;
+    }
+
+    LineLayout layout = layouts.get(row);
+    if(layout == null) {
+      layout = layout(model.getLine(row), font, context);
+      layouts.put(row, layout);
+    }
+    return layout;
+  }
+
+  /**
+   * Lays out a line without keeping it, for measuring lines that aren't about to be shown. The line is shaped
+   * as one left-to-right run, so ligatures, combining marks and scripts that need shaping get their proper
+   * glyphs.
+   */
+  static LineLayout layout(String line, Font font, FontRenderContext context) {
+    char[] chars = line.toCharArray();
+    return new LineLayout(line, font.layoutGlyphVector(context, chars, 0, chars.length, Font.LAYOUT_LEFT_TO_RIGHT));
+  }
+
+  static class LineLayout {
+    private final String line;
+    private final GlyphVector glyphs;
+    private final float[] positions;
+    private int wrapWidth;
+    private int[] rowStarts;
+
+    private LineLayout(String line, GlyphVector glyphs) {
+      int length = line.length();
+      this.line = line;
+      this.glyphs = glyphs;
+      this.positions = new float[length + 1];
+      this.wrapWidth = -1;
+
+      int glyphCount = glyphs.getNumGlyphs();
+      float[] glyphPositions = glyphs.getGlyphPositions(0, glyphCount + 1, null);
+      Arrays.fill(positions, Float.NaN);
+      positions[length] = glyphPositions[2 * glyphCount];
+      for(int i = 0; i < glyphCount; i++) {
+        int column = glyphs.getGlyphCharIndex(i);
+        if(column < length && Float.isNaN(positions[column])) positions[column] = glyphPositions[2 * i];
+      }
+      // columns inside a glyph, like the second half of a surrogate pair or a ligature, sit at the end of that glyph
+      for(int column = length - 1; column >= 0; column--) {
+        if(Float.isNaN(positions[column])) positions[column] = positions[column + 1];
+      }
+      // shaping can reorder glyphs within a cluster, columns are kept in order for hit-testing
+      for(int column = 1; column <= length; column++) {
+        positions[column] = Math.max(positions[column], positions[column - 1]);
+      }
+    }
+
+    GlyphVector getGlyphs() {
+      return glyphs;
+    }
+
+    int length() {
+      return positions.length - 1;
+    }
+
+    int width() {
+      return x(length());
+    }
+
+    int x(int column) {
+      return Math.round(positions[Math.max(Math.min(column, length()), 0)]);
+    }
+
+    /**
+     * Returns the last column whose x position is not past {@code x}.
+     */
+    int column(int x) {
+      return columnAt(0, x);
+    }
+
+    /**
+     * Returns the first column of every visual row when the line is wrapped to {@code width}. A row breaks
+     * after the last space that still fits, or inside a word when the word alone is wider than a row.
+     */
+    int[] rowStarts(int width) {
+      if(width == wrapWidth) return rowStarts;
+
+      int length = length();
+      int[] starts = new int[4];
+      int count = 1, start = 0;
+      while(positions[length] - positions[start] > width) {
+        int end = columnAt(start, positions[start] + width);
+        if(end <= start) end = start + 1;
+        if(end - 1 > start && end < length && Character.isLowSurrogate(line.charAt(end))) end--;
+
+        for(int column = end; column > start + 1; column--) {
+          if(line.charAt(column - 1) == ' ') {
+            end = column;
+            break;
+          }
+        }
+
+        if(count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+        starts[count++] = end;
+        start = end;
+      }
+
+      wrapWidth = width;
+      rowStarts = Arrays.copyOf(starts, count);
+      return rowStarts;
+    }
+
+    private int columnAt(int from, float x) {
+      int low = from, high = length();
+      while(low < high) {
+        int middle = (low + high + 1) >>> 1;
+        if(positions[middle] <= x) low = middle;
+        else high = middle - 1;
+      }
+      return low;
+    }
+  }
+}
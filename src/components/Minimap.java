@@ -0,0 +1,264 @@
+package components;
+
+import model.TextChangeEvent;
+import model.TextEditorModel;
+import model.text.LineTree;
+import observers.Delivery;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Whole document at reduced scale beside the editor, with the part shown in the editor highlighted. Clicking
+ * or dragging scrolls the editor to that line.
+ * <p>
+ * The document is cut into blocks of about {@value #BLOCK_LINES} lines and every block is drawn into its own
+ * small image. Blocks keep their images when edits elsewhere move them up or down, and only blocks that
+ * cover edited lines are drawn again. Their lines are copied out of the model on the event dispatch thread
+ * and drawn into the image on a background thread, while the old image is shown in the meantime. Images
+ * take up to {@value #IMAGE_BYTES} bytes together, the least recently painted are dropped beyond that and
+ * drawn again once they are scrolled back into view.
+ */
+public class Minimap extends JComponent {
+  private static final long serialVersionUID = 1L;
+  private static final int BLOCK_LINES = 256;
+  private static final long IMAGE_BYTES = 16L << 20;
+  private static final int LINE_PIXELS = 2;
+  private static final int WIDTH = 120;
+  private static final Color VIEWPORT_COLOR = new Color(0, 0, 0, 32);
+  private final TextEditorModel model;
+  private final TextEditor editor;
+  private final List<Block> blocks;
+  private final Map<Block, Long> images;
+  private final ExecutorService renderer;
+  private long imageBytes;
+  private LineTree blockLines;
+
+  public Minimap(TextEditorModel model, TextEditor editor) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+    if(editor == null) throw new IllegalArgumentException("Editor can't be null.");
+
+    this.model = model;
+    this.editor = editor;
+    this.blocks = new ArrayList<>();
+    this.images = new LinkedHashMap<>(16, 0.75f, true);
+    this.imageBytes = 0;
+    this.renderer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "minimap-renderer");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    int[] counts = split(model.getLineCount());
+    for(int i = 0; i < counts.length; i++) blocks.add(new Block());
+    this.blockLines = new LineTree(counts);
+
+    initGUI();
+  }
+
+  private void initGUI() {
+    setOpaque(true);
+    setBackground(Color.WHITE);
+    setBorder(BorderFactory.createMatteBorder(0, 1, 0, 0, Color.LIGHT_GRAY));
+
+    model.addTextChangeObserver(this::textChanged);
+    model.addTextObserver(this::repaint, Delivery.COALESCED);
+
+    MouseAdapter scroller = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        editor.scrollToLine(lineAt(e.getY()));
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        editor.scrollToLine(lineAt(e.getY()));
+      }
+    };
+    addMouseListener(scroller);
+    addMouseMotionListener(scroller);
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    return new Dimension(WIDTH + 1, LINE_PIXELS * model.getLineCount());
+  }
+
+  /**
+   * Returns how far the minimap is scrolled. A document taller than the minimap is moved along with the editor,
+   * so the top of the document is shown when the editor is at the top and the bottom when it is at the bottom.
+   */
+  private int scrollOffset() {
+    int overflow = LINE_PIXELS * model.getLineCount() - getHeight();
+    if(overflow <= 0) return 0;
+
+    int first = editor.getFirstVisibleLine();
+    int scrollable = model.getLineCount() - (editor.getLastVisibleLine() - first + 1);
+    return scrollable <= 0 ? 0 : (int) ((long) overflow * first / scrollable);
+  }
+
+  private int lineAt(int y) {
+    return Math.max(Math.min((y + scrollOffset()) / LINE_PIXELS, model.getLineCount() - 1), 0);
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    Rectangle clip = g.getClipBounds();
+    if(clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+    g.setColor(getBackground());
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+    int offset = scrollOffset();
+    int firstLine = Math.max((clip.y + offset) / LINE_PIXELS, 0);
+    int lastLine = (clip.y + clip.height + offset) / LINE_PIXELS + 1;
+
+    int index = blockLines.indexOf(firstLine, 0);
+    long line = blockLines.sumBefore(index);
+    for(; index < blocks.size() && line < lastLine; index++) {
+      Block block = blocks.get(index);
+      int lines = blockLines.get(index);
+      if(!block.current && !block.requested) render(block, (int) line, lines);
+      if(block.image != null) {
+        images.get(block); // marks the image as recently painted
+        g.drawImage(block.image, 1, (int) (line * LINE_PIXELS - offset), null);
+      }
+      line += lines;
+    }
+
+    int first = editor.getFirstVisibleLine();
+    int last = editor.getLastVisibleLine();
+    g.setColor(VIEWPORT_COLOR);
+    g.fillRect(1, first * LINE_PIXELS - offset, WIDTH, (last - first + 1) * LINE_PIXELS);
+  }
+
+  private void render(Block block, int line, int lines) {
+    block.requested = true;
+    String[] text = new String[lines];
+    Iterator<String> iterator = model.linesRange(line, line + lines);
+    for(int i = 0; i < lines; i++) {
+      String next = iterator.next();
+      text[i] = next.length() > WIDTH ? next.substring(0, WIDTH) : next;
+    }
+
+    renderer.execute(() -> {
+      BufferedImage image = draw(text);
+      SwingUtilities.invokeLater(() -> {
+        if(block.dropped) return;
+
+        setImage(block, image);
+        block.current = true;
+        repaint();
+      });
+    });
+  }
+
+  private static BufferedImage draw(String[] lines) {
+    int height = Math.max(lines.length * LINE_PIXELS, 1);
+    int[] pixels = new int[WIDTH * height];
+    for(int row = 0; row < lines.length; row++) {
+      String line = lines[row];
+      for(int column = 0; column < line.length(); column++) {
+        char c = line.charAt(column);
+        if(Character.isWhitespace(c)) continue;
+
+        pixels[row * LINE_PIXELS * WIDTH + column] = Character.isLetterOrDigit(c) ? 0xFF606060 : 0xFFA0A0A0;
+      }
+    }
+
+    BufferedImage image = new BufferedImage(WIDTH, height, BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, WIDTH, height, pixels, 0, WIDTH);
+    return image;
+  }
+
+  /**
+   * Replaces the blocks covering the edited lines with new blocks for the same lines after the edit. The other
+   * blocks keep their images and only their position changes.
+   */
+  private void textChanged(TextChangeEvent event) {
+    int row = event.getStart().getRow();
+    int first = blockLines.indexOf(row, 0);
+    int last = blockLines.indexOf(row + event.getRemovedLines(), 0);
+    long lines = blockLines.sumBefore(last + 1) - blockLines.sumBefore(first) + event.getLineDelta();
+
+    int[] counts = split((int) lines);
+    List<Block> replaced = blocks.subList(first, last + 1);
+    BufferedImage previous = replaced.get(0).image;
+    for(Block block : replaced) {
+      setImage(block, null);
+      block.dropped = true;
+    }
+    replaced.clear();
+    for(int i = 0; i < counts.length; i++) {
+      Block block = new Block();
+      if(i == 0) setImage(block, previous);
+      replaced.add(block);
+    }
+    blockLines.replace(first, last + 1, counts);
+  }
+
+  /**
+   * Gives a block its image, or takes it away for {@code null}, and drops the images painted least recently
+   * while all of them together are over {@value #IMAGE_BYTES} bytes. A block without an image is drawn again
+   * the next time it is painted.
+   */
+  private void setImage(Block block, BufferedImage image) {
+    Long bytes = images.remove(block);
+    if(bytes != null) imageBytes -= bytes;
+    block.image = image;
+    if(image == null) return;
+
+    long size = 4L * image.getWidth() * image.getHeight();
+    images.put(block, size);
+    imageBytes += size;
+
+    Iterator<Map.Entry<Block, Long>> eldest = images.entrySet().iterator();
+    while(imageBytes > IMAGE_BYTES && images.size() > 1) {
+      Map.Entry<Block, Long> entry = eldest.next();
+      if(entry.getKey() == block) continue;
+
+      Block evicted = entry.getKey();
+      imageBytes -= entry.getValue();
+      eldest.remove();
+      evicted.image = null;
+      evicted.current = false;
+      evicted.requested = false;
+    }
+  }
+
+  /**
+   * Splits lines into blocks of {@value #BLOCK_LINES} to twice as many lines, so a block that grows a little
+   * isn't split into a full block and a tiny one.
+   */
+  private static int[] split(int lines) {
+    int count = Math.max(lines / BLOCK_LINES, 1);
+    int[] counts = new int[count];
+    for(int i = 0; i < count; i++) {
+      counts[i] = (int) ((long) lines * (i + 1) / count - (long) lines * i / count);
+    }
+    return counts;
+  }
+
+  private static class Block {
+    private BufferedImage image;
+    private boolean current;
+    private boolean requested;
+    private boolean dropped;
+
+    private Block() {
+      this.image = null;
+      this.current = false;
+      this.requested = false;
+      this.dropped = false;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package components;
+
+import model.TextChangeEvent;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least recently used map from rows to values derived from those rows. Values are weighed, the oldest
+ * entries are evicted once the total weight passes the capacity, and edits drop the rows they touched
+ * while moving the entries below them to their new rows.
+ */
+class RowCache<V> {
+  private final ToLongFunction<V> weigher;
+  private LinkedHashMap<Integer, V> entries;
+  private long capacity;
+  private long weight;
+
+  RowCache(long capacity, ToLongFunction<V> weigher) {
+    if(capacity < 0) throw new IllegalArgumentException("Capacity can't be negative.");
+    if(weigher == null) throw new IllegalArgumentException("Weigher can't be null.");
+
+    this.weigher = weigher;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    this.capacity = capacity;
+    this.weight = 0;
+  }
+
+  V get(int row) {
+    return entries.get(row);
+  }
+
+  void put(int row, V value) {
+    V old = entries.put(row, value);
+    if(old != null) weight -= weigher.applyAsLong(old);
+    weight += weigher.applyAsLong(value);
+    evict();
+  }
+
+  void clear() {
+    entries.clear();
+    weight = 0;
+  }
+
+  long getCapacity() {
+    return capacity;
+  }
+
+  void setCapacity(long capacity) {
+    if(capacity < 0) throw new IllegalArgumentException("Capacity can't be negative.");
+
+    this.capacity = capacity;
+    evict();
+  }
+
+  long getWeight() {
+    return weight;
+  }
+
+  void textChanged(TextChangeEvent event) {
+    int row = event.getStart().getRow();
+    if(event.getLineDelta() == 0) {
+      for(int i = row; i <= row + event.getInsertedLines(); i++) {
+        V old = entries.remove(i);
+        if(old != null) weight -= weigher.applyAsLong(old);
+      }
+      return;
+    }
+
+    LinkedHashMap<Integer, V> shifted = new LinkedHashMap<>(16, 0.75f, true);
+    for(Map.Entry<Integer, V> entry : entries.entrySet()) {
+      int key = entry.getKey();
+      if(key < row) shifted.put(key, entry.getValue());
+      else if(key > row + event.getRemovedLines()) shifted.put(key + event.getLineDelta(), entry.getValue());
+      else weight -= weigher.applyAsLong(entry.getValue());
+    }
+    entries = shifted;
+  }
+
+  private void evict() {
+    Iterator<V> iterator = entries.values().iterator();
+    while(weight > capacity && iterator.hasNext()) {
+      weight -= weigher.applyAsLong(iterator.next());
+      iterator.remove();
+    }
+  }
+}
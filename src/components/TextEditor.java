@@ -3,136 +3,398 @@ package components;
 import model.Location;
 import model.LocationRange;
 import model.TextEditorModel;
-import model.manager.StackStatusListener;
-import model.manager.UndoManager;
-import observers.SelectionObserver;
+import observers.Delivery;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.datatransfer.*;
-import java.awt.event.*;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.List;
 
-public class TextEditor extends JComponent {
+public class TextEditor extends JComponent implements Scrollable {
   public static final int padding = 4;
   public static final int lineSpacing = 3;
   private final TextEditorModel model;
+  private final List<Rectangle> dirty;
+  private final LineLayoutCache layouts;
+  private final WrapLayout wrap;
+  private FontRenderContext renderContext;
+  private LineImageCache lineImages;
+  private boolean lineImageCaching;
+  private int textWidth;
+  private int rowCount;
+  private int anchorLine;
+  private int anchorOffset;
+  private Location cursorLocation;
+  private LocationRange selectionRange;
 
   public TextEditor(TextEditorModel model) {
     if(model == null) throw new IllegalArgumentException("Model can't be null.");
 
     this.model = model;
+    this.dirty = new ArrayList<>();
+    this.layouts = new LineLayoutCache(model);
+    this.wrap = new WrapLayout(model, layouts, this::wrapChanged);
+    this.textWidth = 0;
+    this.rowCount = model.getLineCount();
+    this.cursorLocation = model.getCursorLocation();
+    this.selectionRange = model.getSelectionRange();
 
     initGUI();
   }
 
   private void initGUI() {
     setFocusable(true);
+    setOpaque(true);
+
+    model.addTextChangeObserver(event -> {
+      int line = event.getStart().getRow();
+      if(event.getLineDelta() != 0 || wrap.getRowCount() != rowCount) {
+        rowCount = wrap.getRowCount();
+        revalidate();
+        markDirty(rowBounds(wrap.firstRowOf(line), Integer.MAX_VALUE));
+      } else {
+        markDirty(lineBounds(line, line + event.getInsertedLines() + 1));
+      }
+    }, Delivery.COALESCED);
+    model.addCursorObserver(location -> {
+      markDirty(caretBounds(cursorLocation));
+      markDirty(caretBounds(location));
+      cursorLocation = location;
+      scrollRectToVisible(cursorBounds(location));
+    }, Delivery.COALESCED);
+    model.addSelectionObserver(range -> {
+      selectionChanged(selectionRange, range);
+      selectionRange = range;
+    }, Delivery.COALESCED);
   }
 
-  public Location getPointerDocumentLocation(int x, int y) {
-    Graphics2D g2d = (Graphics2D) getGraphics();
-    List<String> lines = model.getLines();
-    int row = (int) Math.floor((double) (y-padding) / (g2d.getFont().getSize()+lineSpacing));
-    row = Math.max(Math.min(row, lines.size()-1), 0);
-
-    String line = lines.get(Math.min(row, lines.size() - 1));
-    int col = line.length();
-    int lineWidth = g2d.getFontMetrics().stringWidth(line);
-    if(x <= 0) col = 0;
-    else if(lineWidth > x)  {
-      int charApprox =  (int) Math.floor((double) line.length() * x / lineWidth);
-      for(int i = charApprox > 1 ? charApprox -2 : charApprox ; i <= line.length(); i++) {
-        if(g2d.getFontMetrics().stringWidth(line.substring(0, i)) > x) {
-          col = i-1;
-          break;
-        }
+  /**
+   * Marks only the rows whose highlighting differs between the two selections, so extending a selection
+   * by dragging repaints the rows the selection end passed over and not the whole selection.
+   */
+  private void selectionChanged(LocationRange before, LocationRange after) {
+    if(before == null && after == null) return;
+    if(before == null || after == null) {
+      LocationRange range = before == null ? after : before;
+      markDirty(lineBounds(range.getStart().getRow(), range.getEnd().getRow() + 1));
+      return;
+    }
+
+    if(before.getStart().equals(after.getStart())) {
+      markLines(before.getEnd().getRow(), after.getEnd().getRow());
+    } else if(before.getEnd().equals(after.getEnd())) {
+      markLines(before.getStart().getRow(), after.getStart().getRow());
+    } else {
+      markDirty(lineBounds(before.getStart().getRow(), before.getEnd().getRow() + 1));
+      markDirty(lineBounds(after.getStart().getRow(), after.getEnd().getRow() + 1));
+    }
+  }
+
+  private void markLines(int line, int otherLine) {
+    markDirty(lineBounds(Math.min(line, otherLine), Math.max(line, otherLine) + 1));
+  }
+
+  /**
+   * Adds an area to repaint with the next frame. Overlapping areas are merged, while separate ones are kept
+   * apart, because the repaint manager would otherwise paint everything between them as one rectangle.
+   */
+  private void markDirty(Rectangle area) {
+    area = area.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+    if(area.isEmpty()) return;
+    if(dirty.isEmpty()) SwingUtilities.invokeLater(this::repaintDirty);
+
+    for(int i = 0; i < dirty.size(); i++) {
+      Rectangle other = dirty.get(i);
+      if(other.intersects(area)) {
+        dirty.remove(i);
+        markDirty(other.union(area));
+        return;
       }
     }
-    col = Math.max(Math.min(col, lines.get(row).length()), 0);
-    return new Location(row, col);
+    dirty.add(area);
+  }
+
+  private void repaintDirty() {
+    List<Rectangle> areas = new ArrayList<>(dirty);
+    dirty.clear();
+    if(!isShowing()) return;
+
+    for(Rectangle area : areas) {
+      paintImmediately(area);
+    }
+  }
+
+  private Rectangle rowBounds(int fromRow, int toRow) {
+    FontMetrics metrics = getFontMetrics(getFont());
+    int top = padding + fromRow * lineHeight() + getFont().getSize() - metrics.getAscent();
+    long bottom = padding + (long) (toRow - 1) * lineHeight() + getFont().getSize() + metrics.getDescent();
+    return new Rectangle(0, top, getWidth(), (int) Math.min(bottom - top + 1, Integer.MAX_VALUE));
+  }
+
+  private Rectangle lineBounds(int fromLine, int toLine) {
+    return rowBounds(wrap().firstRowOf(fromLine), wrap.firstRowOf(toLine));
+  }
+
+  private Rectangle caretBounds(Location location) {
+    if(location.getRow() >= model.getLineCount()) return lineBounds(location.getRow(), location.getRow() + 1);
+
+    return new Rectangle(caretX(location) - 1, padding + wrap.rowOf(location) * lineHeight(), 3, getFont().getSize() + 1);
+  }
+
+  private int caretX(Location location) {
+    LineLayoutCache.LineLayout layout = layoutOf(location.getRow());
+    return layout.x(location.getColumn()) - layout.x(wrap().rowStartOf(location));
+  }
+
+  /**
+   * Turns soft wrapping of long lines to the width of the editor on or off. While wrapping, the editor
+   * follows the width of its viewport instead of scrolling horizontally.
+   */
+  public void setLineWrap(boolean enabled) {
+    wrap.setEnabled(enabled);
+    rowCount = wrap.getRowCount();
+    revalidate();
+    repaint();
+  }
+
+  public boolean isLineWrap() {
+    return wrap.isEnabled();
+  }
+
+  public int getFirstVisibleLine() {
+    return wrap().lineAt(rowAt(getVisibleRect().y));
+  }
+
+  public int getLastVisibleLine() {
+    Rectangle visible = getVisibleRect();
+    return wrap().lineAt(rowAt(visible.y + visible.height - 1));
+  }
+
+  /**
+   * Scrolls so the given line is in the middle of the viewport.
+   */
+  public void scrollToLine(int line) {
+    Rectangle visible = getVisibleRect();
+    int y = padding + wrap().firstRowOf(line) * lineHeight() - visible.height / 2;
+    scrollRectToVisible(new Rectangle(visible.x, Math.max(y, 0), visible.width, visible.height));
+  }
+
+  private WrapLayout wrap() {
+    if(renderContext == null) renderContext = getFontMetrics(getFont()).getFontRenderContext();
+    wrap.setGeometry(getWidth() - padding, getFont(), renderContext);
+    return wrap;
+  }
+
+  /**
+   * Called when wrapping changed the row count of lines nobody edited, which happens while lines are wrapped
+   * again after a resize. The line at the top of the viewport is kept in place so the text doesn't jump.
+   */
+  private void wrapChanged() {
+    rowCount = wrap.getRowCount();
+    revalidate();
+    repaint();
+    if(!(getParent() instanceof JViewport)) return;
+
+    JViewport viewport = (JViewport) getParent();
+    viewport.getParent().validate();
+    Point position = viewport.getViewPosition();
+    int y = Math.max(padding + wrap.firstRowOf(anchorLine) * lineHeight() + anchorOffset, 0);
+    if(position.y != y) viewport.setViewPosition(new Point(position.x, y));
+  }
+
+  /**
+   * Turns drawing text from cached line images on or off. The cache is created the first time this is
+   * turned on and emptied whenever it is turned off.
+   */
+  public void setLineImageCaching(boolean enabled) {
+    if(enabled && lineImages == null) lineImages = new LineImageCache(model);
+    if(!enabled && lineImages != null) lineImages.clear();
+
+    lineImageCaching = enabled;
+    repaint();
+  }
+
+  public boolean isLineImageCaching() {
+    return lineImageCaching;
+  }
+
+  public LineImageCache getLineImageCache() {
+    return lineImages;
+  }
+
+  /**
+   * Returns the cached layout of a row, measured with the render context of the last paint so hit-testing
+   * agrees with what is on screen.
+   */
+  private LineLayoutCache.LineLayout layoutOf(int row) {
+    if(renderContext == null) renderContext = getFontMetrics(getFont()).getFontRenderContext();
+    return layouts.get(row, getFont(), renderContext);
+  }
+
+  private int lineHeight() {
+    return getFont().getSize() + lineSpacing;
+  }
+
+  private int rowAt(int y) {
+    int row = (int) Math.floor((double) (y - padding) / lineHeight());
+    return Math.max(Math.min(row, wrap.getRowCount() - 1), 0);
+  }
+
+  private Rectangle cursorBounds(Location location) {
+    int x = caretX(location);
+    return new Rectangle(Math.max(x - padding, 0), wrap.rowOf(location) * lineHeight(), 2 * padding, lineHeight() + 2 * padding);
+  }
+
+  public Location getPointerDocumentLocation(int x, int y) {
+    return wrap().locationAt(rowAt(y), x);
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    int width = wrap.isEnabled() ? padding : textWidth + 2 * padding;
+    return new Dimension(width, 2 * padding + wrap.getRowCount() * lineHeight());
+  }
+
+  @Override
+  public Dimension getPreferredScrollableViewportSize() {
+    return getPreferredSize();
+  }
+
+  @Override
+  public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+    return orientation == SwingConstants.VERTICAL ? lineHeight() : getFontMetrics(getFont()).charWidth('m');
+  }
+
+  @Override
+  public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+    return orientation == SwingConstants.VERTICAL ?
+        Math.max(visibleRect.height - lineHeight(), lineHeight()) :
+        Math.max(visibleRect.width - padding, padding);
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportWidth() {
+    return wrap.isEnabled() || getParent() instanceof JViewport && getParent().getWidth() > getPreferredSize().width;
+  }
+
+  @Override
+  public boolean getScrollableTracksViewportHeight() {
+    return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
   }
 
   @Override
   public void paintComponent(Graphics g) {
-    drawSelection(g);
-    drawText(g);
-    drawCursor(g);
+    Rectangle clip = g.getClipBounds();
+    if(clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+
+    renderContext = ((Graphics2D) g).getFontRenderContext();
+    g.setColor(getBackground());
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+    int top = getVisibleRect().y;
+    anchorLine = wrap().lineAt(rowAt(top));
+    anchorOffset = top - padding - wrap.firstRowOf(anchorLine) * lineHeight();
+
+    int firstRow = rowAt(clip.y);
+    int lastRow = rowAt(clip.y + clip.height) + 1;
+    drawSelection(g, firstRow, lastRow);
+    drawText(g, firstRow, lastRow);
+    drawCursor(g, firstRow, lastRow);
   }
 
-  private void drawSelection(Graphics g) {
+  private void drawSelection(Graphics g, int firstRow, int lastRow) {
     LocationRange selection = model.getSelectionRange();
     if(selection == null) return;
 
-    Color originalColor = g.getColor();
-
-    Graphics2D g2d = (Graphics2D) g;
-    List<String> lines = model.getLines();
     Location start = selection.getStart();
     Location end = selection.getEnd();
+    int line = Math.max(start.getRow(), wrap.lineAt(firstRow));
+    int row = wrap.firstRowOf(line);
+    if(end.getRow() < line || row >= lastRow) return;
 
+    Color originalColor = g.getColor();
+    Graphics2D g2d = (Graphics2D) g;
+    int height = g2d.getFont().getSize();
     g2d.setColor(Color.PINK);
-    String startLine = lines.get(start.getRow());
 
-    int x = g2d.getFontMetrics().stringWidth(startLine.substring(0, start.getColumn()));
-    int y = padding+start.getRow()*(lineSpacing+g2d.getFont().getSize());
-    int width = g2d.getFontMetrics().stringWidth(start.getRow() == end.getRow() ?
-        startLine.substring(start.getColumn(), end.getColumn()) :
-        startLine.substring(start.getColumn()));
-    int height = g2d.getFont().getSize();
-    Shape rect = new Rectangle(x, y, width, height);
-    g2d.fill(rect);
-    g2d.draw(rect);
+    for(; line <= end.getRow() && row < lastRow; line++) {
+      LineLayoutCache.LineLayout layout = layoutOf(line);
+      int startColumn = line == start.getRow() ? start.getColumn() : 0;
+      int endColumn = line == end.getRow() ? end.getColumn() : layout.length();
+
+      int[] starts = wrap.rowStarts(line);
+      for(int i = 0; i < starts.length; i++, row++) {
+        int rowStart = starts[i];
+        int rowEnd = i + 1 < starts.length ? starts[i + 1] : layout.length();
+        int from = Math.max(startColumn, rowStart);
+        int to = Math.min(endColumn, rowEnd);
+        if(row < firstRow || row >= lastRow || from > to || (from == to && to == rowEnd && i + 1 < starts.length)) continue;
 
-    if(start.getRow() != end.getRow()) {
-      for(int i = start.getRow()+1; i < end.getRow(); i++) {
-        rect = new Rectangle(0, padding+i*(lineSpacing+g2d.getFont().getSize()), g2d.getFontMetrics().stringWidth(lines.get(i)), height);
+        int offset = layout.x(rowStart);
+        int x = layout.x(from) - offset;
+        int width = layout.x(to) - offset - x;
+        Shape rect = new Rectangle(x, padding + row * lineHeight(), width, height);
         g2d.fill(rect);
         g2d.draw(rect);
       }
-
-      rect = new Rectangle(0,
-          padding+end.getRow()*(lineSpacing+g2d.getFont().getSize()),
-          g2d.getFontMetrics().stringWidth(lines.get(end.getRow()).substring(0, end.getColumn())),
-          height);
-      g2d.fill(rect);
-      g2d.draw(rect);
     }
 
     g.setColor(originalColor);
   }
 
-  private void drawText(Graphics g) {
+  private void drawText(Graphics g, int firstRow, int lastRow) {
     Color originalColor = g.getColor();
     Graphics2D g2d = (Graphics2D) g;
+    FontMetrics metrics = g2d.getFontMetrics();
     g2d.setColor(Color.BLACK);
 
-    int lineNum = 0;
-    g2d.setColor(Color.BLACK);
-    Iterator<String> iter = model.allLines();
-    while(iter.hasNext()) {
-      String line = iter.next();
-      g2d.drawString(iter.hasNext() ? line.concat("\n") : line, 0, padding+g2d.getFont().getSize()+(lineNum++)*(lineSpacing+g2d.getFont().getSize()));
+    int widest = textWidth;
+    int line = wrap.lineAt(firstRow);
+    int row = wrap.firstRowOf(line);
+    for(; line < model.getLineCount() && row < lastRow; line++) {
+      LineLayoutCache.LineLayout layout = layoutOf(line);
+      BufferedImage image = lineImageCaching ? lineImages.get(line, layout, g2d) : null;
+      widest = Math.max(widest, layout.width());
+
+      int[] starts = wrap.rowStarts(line);
+      for(int i = 0; i < starts.length; i++, row++) {
+        if(row < firstRow || row >= lastRow) continue;
+
+        int baseline = padding+g2d.getFont().getSize()+row*lineHeight();
+        int offset = layout.x(starts[i]);
+        Shape clip = g2d.getClip();
+        if(starts.length > 1) {
+          int rowEnd = i + 1 < starts.length ? layout.x(starts[i + 1]) : layout.width();
+          g2d.clipRect(0, baseline - metrics.getAscent(), rowEnd - offset, metrics.getAscent() + metrics.getDescent());
+        }
+
+        if(image != null) g2d.drawImage(image, -offset, baseline - metrics.getAscent(), null);
+        else g2d.drawGlyphVector(layout.getGlyphs(), -offset, baseline);
+        g2d.setClip(clip);
+      }
+    }
+
+    if(widest > textWidth) {
+      textWidth = widest;
+      if(!wrap.isEnabled()) SwingUtilities.invokeLater(this::revalidate);
     }
 
     g.setColor(originalColor);
   }
 
-  private void drawCursor(Graphics g) {
+  private void drawCursor(Graphics g, int firstRow, int lastRow) {
+    Location cursor = model.getCursorLocation();
+    int row = wrap.rowOf(cursor);
+    if(row < firstRow || row >= lastRow) return;
+
     Color originalColor = g.getColor();
     Graphics2D g2d = (Graphics2D) g;
 
-    List<String> lines = model.getLines();
-    Location cursor = model.getCursorLocation();
     g2d.setColor(Color.RED);
-    int x = g2d.getFontMetrics().stringWidth(lines.get(cursor.getRow()).substring(0, cursor.getColumn()));
-    int y = padding + cursor.getRow()*(lineSpacing+g2d.getFont().getSize());
+    int x = caretX(cursor);
+    int y = padding + row*lineHeight();
     g2d.drawLine(x, y, x, y+g2d.getFont().getSize());
     g.setColor(originalColor);
   }
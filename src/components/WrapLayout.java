@@ -0,0 +1,212 @@
+package components;
+
+import model.Location;
+import model.TextChangeEvent;
+import model.TextEditorModel;
+import model.text.LineTree;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * Soft-wrap bookkeeping for the editor. The number of visual rows of every model line is kept in a
+ * {@link LineTree}, so finding the first visual row of a line, or the line shown on a visual row, is a prefix
+ * sum lookup in O(log n). Where the rows of a line start is taken from its cached layout.
+ * <p>
+ * Lines touched by an edit are measured right away and lines about to be shown are measured before they are
+ * drawn. After the width changes every other line is measured again by a sweep that runs in short slices on
+ * the event dispatch thread, and until the sweep reaches a line it keeps its previous row count.
+ */
+class WrapLayout {
+  private static final int[] SINGLE_ROW = {0};
+  private static final long SLICE_NANOS = 4_000_000;
+  private static final int SLICE_CHECK_LINES = 64;
+  private static final int MEASURED_EDIT_LINES = 256;
+  private final TextEditorModel model;
+  private final LineLayoutCache layouts;
+  private final Runnable listener;
+  private final Timer sweeper;
+  private LineTree rows;
+  private int width;
+  private Font font;
+  private FontRenderContext context;
+  private float maxCharWidth;
+  private int sweepLine;
+  private boolean notifying;
+
+  WrapLayout(TextEditorModel model, LineLayoutCache layouts, Runnable listener) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+    if(layouts == null) throw new IllegalArgumentException("Layout cache can't be null.");
+    if(listener == null) throw new IllegalArgumentException("Listener can't be null.");
+
+    this.model = model;
+    this.layouts = layouts;
+    this.listener = listener;
+    this.sweeper = new Timer(0, e -> sweep());
+    this.rows = null;
+    this.width = 0;
+
+    model.addTextChangeObserver(this::textChanged);
+  }
+
+  boolean isEnabled() {
+    return rows != null;
+  }
+
+  void setEnabled(boolean enabled) {
+    if(enabled == isEnabled()) return;
+    if(!enabled) {
+      rows = null;
+      sweeper.stop();
+      return;
+    }
+
+    int[] counts = new int[model.getLineCount()];
+    Arrays.fill(counts, 1);
+    rows = new LineTree(counts);
+    startSweep(0);
+  }
+
+  /**
+   * Updates the width rows are wrapped to and the font they are measured with. Lines are wrapped again only
+   * when one of them actually changed.
+   */
+  void setGeometry(int width, Font font, FontRenderContext context) {
+    if(width == this.width && font.equals(this.font) && context.equals(this.context)) return;
+
+    this.width = width;
+    this.font = font;
+    this.context = context;
+    this.maxCharWidth = (float) font.getMaxCharBounds(context).getWidth();
+    if(isEnabled()) startSweep(0);
+  }
+
+  int getRowCount() {
+    return isEnabled() ? (int) rows.sum() : model.getLineCount();
+  }
+
+  int firstRowOf(int line) {
+    if(!isEnabled()) return line;
+    if(line >= rows.size()) return (int) rows.sum();
+
+    return (int) rows.sumBefore(line);
+  }
+
+  int lineAt(int row) {
+    if(!isEnabled()) return Math.max(Math.min(row, model.getLineCount() - 1), 0);
+
+    return rows.indexOf(Math.max(row, 0), 0);
+  }
+
+  /**
+   * Returns the first column of every visual row of a line. A line whose row count was only carried over
+   * from an earlier width is corrected here, before anything is drawn from it.
+   */
+  int[] rowStarts(int line) {
+    if(!isEnabled() || width <= 0) return SINGLE_ROW;
+
+    int[] starts = layouts.get(line, font, context).rowStarts(width);
+    if(rows.get(line) != starts.length) {
+      rows.set(line, starts.length);
+      changed();
+    }
+    return starts;
+  }
+
+  int rowOf(Location location) {
+    int[] starts = rowStarts(location.getRow());
+    return firstRowOf(location.getRow()) + indexOf(starts, location.getColumn());
+  }
+
+  int rowStartOf(Location location) {
+    int[] starts = rowStarts(location.getRow());
+    return starts[indexOf(starts, location.getColumn())];
+  }
+
+  Location locationAt(int row, int x) {
+    int line = lineAt(row);
+    LineLayoutCache.LineLayout layout = layouts.get(line, font, context);
+    int[] starts = rowStarts(line);
+    int index = Math.max(Math.min(row - firstRowOf(line), starts.length - 1), 0);
+
+    int start = starts[index];
+    int end = index + 1 < starts.length ? starts[index + 1] - 1 : layout.length();
+    int column = layout.column(x + layout.x(start));
+    return new Location(line, Math.max(Math.min(column, end), start));
+  }
+
+  private static int indexOf(int[] starts, int column) {
+    int index = Arrays.binarySearch(starts, column);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  private void textChanged(TextChangeEvent event) {
+    if(!isEnabled()) return;
+
+    int line = event.getStart().getRow();
+    int[] counts = new int[event.getInsertedLines() + 1];
+    boolean measure = width > 0 && counts.length <= MEASURED_EDIT_LINES;
+    for(int i = 0; i < counts.length; i++) {
+      counts[i] = measure ? measure(line + i) : 1;
+    }
+    rows.replace(line, line + event.getRemovedLines() + 1, counts);
+
+    if(!measure) startSweep(line);
+  }
+
+  private int measure(int line) {
+    if(line >= model.getLineCount()) return 1;
+    if(model.getLineLength(line) * maxCharWidth <= width) return 1;
+
+    return LineLayoutCache.layout(model.getLine(line), font, context).rowStarts(width).length;
+  }
+
+  private void startSweep(int line) {
+    sweepLine = sweeper.isRunning() ? Math.min(sweepLine, line) : line;
+    if(!sweeper.isRunning()) sweeper.start();
+  }
+
+  private void sweep() {
+    if(!isEnabled() || width <= 0) {
+      sweeper.stop();
+      return;
+    }
+
+    long deadline = System.nanoTime() + SLICE_NANOS;
+    int from = Math.min(sweepLine, rows.size());
+    int to = from;
+    int[] counts = new int[SLICE_CHECK_LINES];
+    while(to < rows.size() && System.nanoTime() < deadline) {
+      int end = Math.min(to + SLICE_CHECK_LINES, rows.size());
+      if(end - from > counts.length) counts = Arrays.copyOf(counts, Math.max(counts.length * 2, end - from));
+      for(; to < end; to++) {
+        counts[to - from] = measure(to);
+      }
+    }
+
+    PrimitiveIterator.OfInt old = rows.iterator(from);
+    for(int i = 0; i < to - from; i++) {
+      if(old.nextInt() != counts[i]) {
+        rows.replace(from, to, Arrays.copyOf(counts, to - from));
+        changed();
+        break;
+      }
+    }
+
+    sweepLine = to;
+    if(to >= rows.size()) sweeper.stop();
+  }
+
+  private void changed() {
+    if(notifying) return;
+
+    notifying = true;
+    SwingUtilities.invokeLater(() -> {
+      notifying = false;
+      listener.run();
+    });
+  }
+}
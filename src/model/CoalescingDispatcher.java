@@ -0,0 +1,117 @@
+package model;
+
+import observers.CursorObserver;
+import observers.SelectionObserver;
+import observers.TextChangeObserver;
+import observers.TextObserver;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+class CoalescingDispatcher {
+  private static final int FRAME_MILLIS = 16;
+  private final List<CursorObserver> cursorObservers;
+  private final List<TextObserver> textObservers;
+  private final List<SelectionObserver> selectionObservers;
+  private final List<TextChangeObserver> textChangeObservers;
+  private final List<TextChangeEvent> pendingChanges;
+  private final Timer timer;
+  private boolean textDirty;
+  private boolean cursorDirty;
+  private boolean selectionDirty;
+  private Location cursorLocation;
+  private LocationRange selectionRange;
+
+  CoalescingDispatcher() {
+    this.cursorObservers = new ArrayList<>();
+    this.textObservers = new ArrayList<>();
+    this.selectionObservers = new ArrayList<>();
+    this.textChangeObservers = new ArrayList<>();
+    this.pendingChanges = new ArrayList<>();
+    this.timer = new Timer(FRAME_MILLIS, e -> flush());
+    this.timer.setRepeats(false);
+  }
+
+  List<CursorObserver> getCursorObservers() {
+    return cursorObservers;
+  }
+
+  List<TextObserver> getTextObservers() {
+    return textObservers;
+  }
+
+  List<SelectionObserver> getSelectionObservers() {
+    return selectionObservers;
+  }
+
+  List<TextChangeObserver> getTextChangeObservers() {
+    return textChangeObservers;
+  }
+
+  void textChanged() {
+    if(textObservers.isEmpty()) return;
+
+    textDirty = true;
+    schedule();
+  }
+
+  void textChanged(TextChangeEvent event) {
+    if(textChangeObservers.isEmpty()) return;
+
+    pendingChanges.add(event);
+    schedule();
+  }
+
+  void cursorMoved(Location location) {
+    if(cursorObservers.isEmpty()) return;
+
+    cursorDirty = true;
+    cursorLocation = location;
+    schedule();
+  }
+
+  void selectionChanged(LocationRange range) {
+    if(selectionObservers.isEmpty()) return;
+
+    selectionDirty = true;
+    selectionRange = range;
+    schedule();
+  }
+
+  private void schedule() {
+    if(!timer.isRunning()) timer.start();
+  }
+
+  void flush() {
+    timer.stop();
+
+    if(!pendingChanges.isEmpty()) {
+      List<TextChangeEvent> changes = new ArrayList<>(pendingChanges);
+      pendingChanges.clear();
+      for(TextChangeEvent event : changes) {
+        for(TextChangeObserver observer : textChangeObservers) {
+          observer.textChanged(event);
+        }
+      }
+    }
+    if(textDirty) {
+      textDirty = false;
+      for(TextObserver observer : textObservers) {
+        observer.updateText();
+      }
+    }
+    if(cursorDirty) {
+      cursorDirty = false;
+      for(CursorObserver observer : cursorObservers) {
+        observer.updateCursorLocation(cursorLocation);
+      }
+    }
+    if(selectionDirty) {
+      selectionDirty = false;
+      for(SelectionObserver observer : selectionObservers) {
+        observer.updateSelectionRange(selectionRange);
+      }
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package model;
+
+import model.text.LineTree;
+import observers.Delivery;
+import observers.StatisticsObserver;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Line, word and character totals of a {@link TextEditorModel}, kept up to date from its text change events.
+ * Word and surrogate pair counts are stored per line, so an edit only recounts the lines it touched and every
+ * total is read in O(1). Like the model it belongs to, it is only used from the event dispatch thread.
+ * <p>
+ * Large recounts, such as the first one or one after loading a file, read a snapshot of the document in chunks
+ * of lines on the common fork-join pool, started from a background thread so the event dispatch thread never
+ * waits for them. Chunks end at line ends and counts are kept per line, so no word or surrogate pair is ever
+ * split between two chunks. Until such a count is in, its lines count as empty, and observers are told once
+ * it is added. Edits made in the meantime move the counted lines along, and lines they touch are counted again.
+ */
+public class DocumentStatistics {
+  private static final int CHUNK_LINES = 4096;
+  private final TextEditorModel model;
+  private final LineTree words;
+  private final LineTree pairs;
+  private final StringBuilder text;
+  private final List<Count> counts;
+  private final List<StatisticsObserver> observers;
+  private final ExecutorService counter;
+  private final long createdVersion;
+  private boolean dirty;
+  private int dirtyFrom;
+  private int dirtyLast;
+
+  DocumentStatistics(TextEditorModel model) {
+    this.model = model;
+    this.text = new StringBuilder();
+    this.counts = new ArrayList<>();
+    this.observers = new ArrayList<>();
+    this.counter = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "statistics-counter");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.words = new LineTree(new int[model.getLineCount()]);
+    this.pairs = new LineTree(new int[model.getLineCount()]);
+    recount(0, model.getLineCount()-1);
+    this.createdVersion = model.getVersion();
+    this.dirty = false;
+
+    model.addTextChangeObserver(this::textChanged, Delivery.IMMEDIATE);
+  }
+
+  /**
+   * Adds an observer told whenever counts made in the background are added to the totals. Totals changed by
+   * edits are up to date as soon as the model notifies its own observers.
+   */
+  public void addStatisticsObserver(StatisticsObserver observer) {
+    if(observer == null) return;
+
+    observers.add(observer);
+  }
+
+  public void removeStatisticsObserver(StatisticsObserver observer) {
+    observers.remove(observer);
+  }
+
+  /**
+   * Tells whether some lines are still being counted in the background.
+   */
+  public boolean isCounting() {
+    return !counts.isEmpty();
+  }
+
+  public int getLineCount() {
+    return model.getLineCount();
+  }
+
+  public long getWordCount() {
+    return words.sum();
+  }
+
+  /**
+   * Returns the number of UTF-16 units, line breaks included.
+   */
+  public long getCharCount() {
+    return model.getLength();
+  }
+
+  /**
+   * Returns the number of Unicode code points, line breaks included.
+   */
+  public long getCodePointCount() {
+    return model.getLength() - pairs.sum();
+  }
+
+  /**
+   * Edits made in a transaction are all delivered after its commit, when the model already holds the final
+   * text. The touched rows are therefore only collected while events arrive, shifted by every later event,
+   * and recounted once the last one is in.
+   */
+  private void textChanged(TextChangeEvent event) {
+    // the counts were taken after edits that were still pending when this was created
+    if(event.getVersion() <= createdVersion) return;
+
+    int start = event.getStart().getRow();
+    int removedLast = start + event.getRemovedLines();
+    int insertedLast = start + event.getInsertedLines();
+    words.replace(start, removedLast + 1, new int[event.getInsertedLines() + 1]);
+    pairs.replace(start, removedLast + 1, new int[event.getInsertedLines() + 1]);
+
+    if(dirty) {
+      dirtyFrom = Math.min(shift(dirtyFrom, start, removedLast, event.getLineDelta(), start), start);
+      dirtyLast = Math.max(shift(dirtyLast, start, removedLast, event.getLineDelta(), insertedLast), insertedLast);
+    } else {
+      dirty = true;
+      dirtyFrom = start;
+      dirtyLast = insertedLast;
+    }
+
+    // the edited lines are dirty now, background counts keep only the lines around them
+    for(Count count : counts) count.textChanged(start, removedLast, event.getLineDelta());
+
+    if(event.getVersion() == model.getVersion()) {
+      dirty = false;
+      recount(dirtyFrom, dirtyLast);
+    }
+  }
+
+  private static int shift(int row, int start, int removedLast, int delta, int replaced) {
+    if(row < start) return row;
+    if(row > removedLast) return row + delta;
+    return replaced;
+  }
+
+  private void recount(int from, int last) {
+    TextSnapshot snapshot = model.snapshot();
+    if(last - from + 1 > CHUNK_LINES) {
+      countInBackground(snapshot, from, last);
+      return;
+    }
+
+    int[] wordCounts = new int[last - from + 1];
+    int[] pairCounts = new int[wordCounts.length];
+    count(snapshot, from, last + 1, from, wordCounts, pairCounts, text);
+    text.setLength(0);
+    if(text.capacity() > 1 << 16) text.trimToSize();
+
+    words.replace(from, last + 1, wordCounts);
+    pairs.replace(from, last + 1, pairCounts);
+  }
+
+  private void countInBackground(TextSnapshot snapshot, int from, int last) {
+    Count count = new Count(from, last - from + 1);
+    counts.add(count);
+    counter.execute(() -> {
+      ForkJoinPool.commonPool().invoke(new CountAction(snapshot, from, last + 1, from, count.words, count.pairs));
+      SwingUtilities.invokeLater(() -> counted(count));
+    });
+  }
+
+  private void counted(Count count) {
+    counts.remove(count);
+    for(int[] part : count.parts) {
+      int lines = part[1] - part[0];
+      words.replace(part[2], part[2] + lines, Arrays.copyOfRange(count.words, part[0], part[1]));
+      pairs.replace(part[2], part[2] + lines, Arrays.copyOfRange(count.pairs, part[0], part[1]));
+    }
+
+    for(StatisticsObserver observer : observers) {
+      observer.updateStatistics(this);
+    }
+  }
+
+  /**
+   * Counts the words and surrogate pairs of rows {@code [from, to)} into the arrays, at index {@code row - base}.
+   * The rows are copied into {@code text} in one go and scanned in place, so no line strings are made.
+   */
+  private static void count(TextSnapshot snapshot, int from, int to, int base, int[] wordCounts, int[] pairCounts, StringBuilder text) {
+    long start = snapshot.offsetOf(from);
+    long end = snapshot.offsetOf(to - 1) + snapshot.getLineLength(to - 1);
+    text.setLength(0);
+    snapshot.appendText(text, start, end);
+
+    int lineStart = 0;
+    for(int row = from; row < to; row++) {
+      int lineEnd = lineStart + snapshot.getLineLength(row);
+      int wordCount = 0, pairCount = 0;
+      boolean inWord = false;
+      for(int i = lineStart; i < lineEnd; i++) {
+        char c = text.charAt(i);
+        boolean whitespace = Character.isWhitespace(c);
+        if(!whitespace && !inWord) wordCount++;
+        inWord = !whitespace;
+        if(Character.isLowSurrogate(c) && i > lineStart && Character.isHighSurrogate(text.charAt(i - 1))) pairCount++;
+      }
+
+      wordCounts[row - base] = wordCount;
+      pairCounts[row - base] = pairCount;
+      lineStart = lineEnd + 1;
+    }
+  }
+
+  /**
+   * Lines counted in the background. Each part is a run of counted lines not edited since the count started,
+   * as {@code {first index, end index, row of the first line now}}.
+   */
+  private static class Count {
+    private final int[] words;
+    private final int[] pairs;
+    private final List<int[]> parts;
+
+    private Count(int row, int lines) {
+      this.words = new int[lines];
+      this.pairs = new int[lines];
+      this.parts = new ArrayList<>();
+      parts.add(new int[] {0, lines, row});
+    }
+
+    /**
+     * Drops the lines from {@code start} to {@code removedLast} and moves the lines after them by {@code delta}.
+     */
+    private void textChanged(int start, int removedLast, int delta) {
+      for(int i = parts.size() - 1; i >= 0; i--) {
+        int[] part = parts.get(i);
+        int first = part[2], last = part[2] + part[1] - part[0] - 1;
+        if(last < start) continue;
+        if(first > removedLast) {
+          part[2] += delta;
+          continue;
+        }
+
+        parts.remove(i);
+        if(last > removedLast) parts.add(i, new int[] {part[1] - (last - removedLast), part[1], removedLast + 1 + delta});
+        if(first < start) parts.add(i, new int[] {part[0], part[0] + start - first, first});
+      }
+    }
+  }
+
+  private static class CountAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final TextSnapshot snapshot;
+    private final int from;
+    private final int to;
+    private final int base;
+    private final int[] wordCounts;
+    private final int[] pairCounts;
+
+    private CountAction(TextSnapshot snapshot, int from, int to, int base, int[] wordCounts, int[] pairCounts) {
+      this.snapshot = snapshot;
+      this.from = from;
+      this.to = to;
+      this.base = base;
+      this.wordCounts = wordCounts;
+      this.pairCounts = pairCounts;
+    }
+
+    @Override
+    protected void compute() {
+      if(to - from <= CHUNK_LINES) {
+        count(snapshot, from, to, base, wordCounts, pairCounts, new StringBuilder());
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new CountAction(snapshot, from, middle, base, wordCounts, pairCounts),
+          new CountAction(snapshot, middle, to, base, wordCounts, pairCounts));
+    }
+  }
+}
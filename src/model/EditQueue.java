@@ -0,0 +1,225 @@
+package model;
+
+import model.manager.UndoManager;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets any thread submit edits to a {@link TextEditorModel}. Edits wait in the queue and are applied on the
+ * event dispatch thread at most once per frame, all of a frame's edits in one transaction. Each edit only
+ * touches its own range, and an edit that starts right where the previous one's text ends, like the next of a
+ * stream of appends, is merged into it, so observers see one event per such run instead of one per edit.
+ * <p>
+ * Edits are recorded for undo unless the queue is created otherwise. Unrecorded edits don't take up undo
+ * history, but once one changes text before the end of the document the recorded actions no longer match it,
+ * so the history is cleared. Appends keep it.
+ * <p>
+ * Offsets refer to the document as it is once all edits submitted before are applied. Edits that no longer
+ * fit into the document when their turn comes are dropped and counted. When the event dispatch thread falls
+ * behind and the queue is full, submitting blocks until the next frame makes room.
+ */
+public class EditQueue {
+  private static final int FRAME_MILLIS = 16;
+  private static final long WINDOW_NANOS = 1_000_000_000L;
+  private static final int DEFAULT_CAPACITY = 1 << 16;
+  private final TextEditorModel model;
+  private final int capacity;
+  private final boolean undoable;
+  private final Timer timer;
+  private final StringBuilder run;
+  private List<Edit> pending;
+  private List<Edit> spare;
+  private boolean scheduled;
+  private volatile long submitted;
+  private volatile long applied;
+  private volatile long rejected;
+  private volatile double throughput;
+  private long windowStart;
+  private long windowApplied;
+
+  public EditQueue(TextEditorModel model, int capacity, boolean undoable) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+    if(capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+
+    this.model = model;
+    this.capacity = capacity;
+    this.undoable = undoable;
+    this.timer = new Timer(FRAME_MILLIS, e -> drain());
+    this.timer.setRepeats(false);
+    this.run = new StringBuilder();
+    this.pending = new ArrayList<>();
+    this.spare = new ArrayList<>();
+    this.scheduled = false;
+    this.submitted = 0;
+    this.applied = 0;
+    this.rejected = 0;
+    this.throughput = 0;
+    this.windowStart = System.nanoTime();
+    this.windowApplied = 0;
+  }
+
+  public EditQueue(TextEditorModel model, int capacity) {
+    this(model, capacity, true);
+  }
+
+  public EditQueue(TextEditorModel model) {
+    this(model, DEFAULT_CAPACITY, true);
+  }
+
+  /**
+   * Inserts text at the end of the document as it is when the edit is applied.
+   */
+  public void append(String text) throws InterruptedException {
+    if(text == null) throw new IllegalArgumentException("Text can't be null.");
+
+    submit(new Edit(-1, -1, text));
+  }
+
+  public void insert(long offset, String text) throws InterruptedException {
+    if(text == null) throw new IllegalArgumentException("Text can't be null.");
+    if(offset < 0) throw new IllegalArgumentException("Offset can't be negative.");
+
+    submit(new Edit(offset, offset, text));
+  }
+
+  public void delete(long start, long end) throws InterruptedException {
+    if(start < 0 || end < start) throw new IllegalArgumentException("Range [" + start + ", " + end + ") isn't valid.");
+
+    submit(new Edit(start, end, ""));
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public boolean isUndoable() {
+    return undoable;
+  }
+
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  public long getSubmittedCount() {
+    return submitted;
+  }
+
+  public long getAppliedCount() {
+    return applied;
+  }
+
+  /**
+   * Returns the number of edits dropped because their range was outside of the document.
+   */
+  public long getRejectedCount() {
+    return rejected;
+  }
+
+  /**
+   * Returns how many edits per second were applied, measured over the last stretch of about a second that
+   * ended with a frame applying edits.
+   */
+  public double getThroughput() {
+    return throughput;
+  }
+
+  private void submit(Edit edit) throws InterruptedException {
+    boolean schedule;
+    synchronized(this) {
+      while(pending.size() >= capacity) {
+        if(SwingUtilities.isEventDispatchThread()) break;
+        wait();
+      }
+      pending.add(edit);
+      submitted++;
+      schedule = !scheduled;
+      scheduled = true;
+    }
+
+    if(!schedule) return;
+    if(SwingUtilities.isEventDispatchThread()) timer.restart();
+    else SwingUtilities.invokeLater(timer::restart);
+  }
+
+  private void drain() {
+    List<Edit> edits;
+    synchronized(this) {
+      edits = pending;
+      pending = spare;
+      scheduled = false;
+      notifyAll();
+    }
+
+    if(!edits.isEmpty()) {
+      model.batch(() -> apply(edits));
+      applied += edits.size();
+      edits.clear();
+    }
+    spare = edits;
+
+    long now = System.nanoTime();
+    if(now - windowStart >= WINDOW_NANOS) {
+      throughput = (applied - windowApplied) * 1e9 / (now - windowStart);
+      windowStart = now;
+      windowApplied = applied;
+    }
+  }
+
+  /**
+   * Applies the edits in order, merging each into the run before it when it starts where the run's text ends.
+   * The cursor keeps its place in the text around it.
+   */
+  private void apply(List<Edit> edits) {
+    long cursor = model.offsetOf(model.getCursorLocation());
+    long length = model.getLength();
+    long runStart = -1, runEnd = -1;
+    boolean rewritten = false;
+    run.setLength(0);
+    for(Edit edit : edits) {
+      long start = edit.start < 0 ? length : edit.start;
+      long end = edit.start < 0 ? length : edit.end;
+      if(end > length) {
+        rejected++;
+        continue;
+      }
+      if(start < length) rewritten = true;
+
+      if(runStart >= 0 && start == runStart + run.length()) {
+        runEnd += end - start;
+      } else {
+        cursor = apply(runStart, runEnd, cursor);
+        runStart = start;
+        runEnd = end;
+        run.setLength(0);
+      }
+      run.append(edit.text);
+      length += edit.text.length() - (end - start);
+    }
+    cursor = apply(runStart, runEnd, cursor);
+    model.moveCursor(model.locationOf(cursor));
+    if(rewritten && !undoable) UndoManager.instance().clear();
+  }
+
+  private long apply(long start, long end, long cursor) {
+    if(start < 0 || (start == end && run.length() == 0)) return cursor;
+
+    model.replace(start, end, run.toString(), undoable);
+    if(end <= cursor) return cursor + run.length() - (end - start);
+    if(start < cursor) return start + run.length();
+    return cursor;
+  }
+
+  private static class Edit {
+    private final long start;
+    private final long end;
+    private final String text;
+
+    private Edit(long start, long end, String text) {
+      this.start = start;
+      this.end = end;
+      this.text = text.replace("\t", "    ");
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package model;
+
+public class TextChangeEvent {
+  private final Location start;
+  private final long offset;
+  private final long removedLength;
+  private final long insertedLength;
+  private final int removedLines;
+  private final int insertedLines;
+  private final long version;
+
+  public TextChangeEvent(Location start, long offset, long removedLength, long insertedLength, int removedLines, int insertedLines, long version) {
+    if(start == null) throw new IllegalArgumentException("Start location can't be null.");
+    if(offset < 0 || removedLength < 0 || insertedLength < 0) throw new IllegalArgumentException("Offset and lengths can't be negative.");
+    if(removedLines < 0 || insertedLines < 0) throw new IllegalArgumentException("Line counts can't be negative.");
+
+    this.start = start;
+    this.offset = offset;
+    this.removedLength = removedLength;
+    this.insertedLength = insertedLength;
+    this.removedLines = removedLines;
+    this.insertedLines = insertedLines;
+    this.version = version;
+  }
+
+  public Location getStart() {
+    return start;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public long getRemovedLength() {
+    return removedLength;
+  }
+
+  public long getInsertedLength() {
+    return insertedLength;
+  }
+
+  /**
+   * Number of line breaks removed, so rows {@code start.getRow()} to {@code start.getRow() + removedLines}
+   * of the old document were touched.
+   */
+  public int getRemovedLines() {
+    return removedLines;
+  }
+
+  /**
+   * Number of line breaks inserted, so rows {@code start.getRow()} to {@code start.getRow() + insertedLines}
+   * of the new document were touched.
+   */
+  public int getInsertedLines() {
+    return insertedLines;
+  }
+
+  public int getLineDelta() {
+    return insertedLines - removedLines;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+}
@@ -1,57 +1,190 @@
 package model;
 
+import model.manager.CompoundAction;
 import model.manager.EditAction;
+import model.manager.SpillFile;
 import model.manager.UndoManager;
+import model.text.LineTree;
+import model.text.PieceTable;
+import model.text.StringTextBuffer;
+import model.text.TextBuffer;
 import observers.CursorObserver;
+import observers.Delivery;
 import observers.SelectionObserver;
+import observers.TextChangeObserver;
 import observers.TextObserver;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.IntStream;
 
 public class TextEditorModel {
-  private final LinkedList<String> lines;
+  private PieceTable document;
+  private LineTree lineIndex;
   private LocationRange selectionRange ;
   private Location cursorLocation;
   private final List<CursorObserver> cursorObservers;
   private final List<TextObserver> textObservers;
   private final List<SelectionObserver> selectionObservers;
+  private final List<TextChangeObserver> textChangeObservers;
+  private final List<TextChangeEvent> pendingChanges;
+  private final CoalescingDispatcher dispatcher;
+  private long version;
+  private int transactionDepth;
+  private CompoundAction transaction;
+  private boolean textChanged;
+  private boolean cursorChanged;
+  private boolean selectionChanged;
+  private DocumentStatistics statistics;
+  private boolean editable;
 
   public TextEditorModel(String initialText) {
-    this.lines = new LinkedList<>(Arrays.asList(initialText.replace("\t", "    ").split("\n", -1)));
+    String normalized = initialText.replace("\t", "    ");
+    this.document = new PieceTable(normalized);
+    this.lineIndex = new LineTree(lineLengthsOf(normalized));
     this.selectionRange  = null;
-    this.cursorLocation = new Location(lines.size()-1, lines.getLast().length());
+    this.cursorLocation = new Location(lineIndex.size()-1, lineIndex.get(lineIndex.size()-1));
     this.cursorObservers = new ArrayList<>();
     this.textObservers = new ArrayList<>();
     this.selectionObservers = new ArrayList<>();
+    this.textChangeObservers = new ArrayList<>();
+    this.pendingChanges = new ArrayList<>();
+    this.dispatcher = new CoalescingDispatcher();
+    this.version = 0;
+    this.transactionDepth = 0;
+    this.transaction = null;
+    this.statistics = null;
+    this.editable = true;
   }
 
+  /**
+   * Returns the lines as they are now. The list is read-only and doesn't change with later edits, see
+   * {@link TextSnapshot#getLines()}.
+   */
   public List<String> getLines() {
-    return lines;
+    return snapshot().getLines();
   }
 
-  public LocationRange getSelectionRange() {
-    return selectionRange;
+  /**
+   * Returns one line as it is now. Cheaper than going through {@link #getLines()} when the line is only read
+   * once, since no snapshot is taken.
+   */
+  public String getLine(int row) {
+    int length = getLineLength(row);
+    long offset = lineIndex.sumBefore(row) + row;
+    return document.substring(offset, offset + length);
   }
 
-  public String getTextRange(LocationRange range) {
-    if(range == null) throw new NullPointerException("Trying to get text while no selection is made.");
+  public void reset(TextBuffer buffer, int[] lineLengths) {
+    if(buffer == null) throw new IllegalArgumentException("Buffer can't be null.");
+    if(lineLengths == null || lineLengths.length == 0) throw new IllegalArgumentException("Document must have at least one line.");
 
-    Location start = range.getStart();
-    Location end = range.getEnd();
+    long removedLength = document.length();
+    int removedLines = getLineCount()-1;
+    this.document = new PieceTable(buffer);
+    this.lineIndex = new LineTree(lineLengths);
+    this.selectionRange = null;
+    this.cursorLocation = new Location(0, 0);
+    UndoManager.instance().clear();
+
+    fireTextChange(new Location(0, 0), 0, removedLength, document.length(), removedLines, lineLengths.length-1);
+    notifyTextObservers();
+    notifyCursorObservers();
+    notifySelectionObservers();
+  }
+
+  public void append(TextBuffer buffer, long start, long end, int[] lineLengths) {
+    if(lineLengths == null || lineLengths.length == 0) throw new IllegalArgumentException("Appended text must have at least one line.");
 
-    if(start.getRow() == end.getRow()) {
-      return lines.get(start.getRow()).substring(start.getColumn(), end.getColumn());
+    int lastRow = getLineCount()-1;
+    Location documentEnd = new Location(lastRow, getLineLength(lastRow));
+    long offset = document.length();
+    document.insert(offset, buffer, start, end);
+    insertLines(documentEnd, lineLengths);
+    fireTextChange(documentEnd, offset, 0, end - start, 0, lineLengths.length-1);
+    notifyTextObservers();
+  }
+
+  private static int[] lineLengthsOf(String text) {
+    int count = 1;
+    for(int i = 0; i < text.length(); i++) {
+      if(text.charAt(i) == '\n') count++;
     }
 
-    StringBuilder builder = new StringBuilder();
-    builder.append(lines.get(start.getRow()).substring(start.getColumn())).append("\n");
-    for(int i = start.getRow()+1; i < end.getRow(); i++) {
-      builder.append(lines.get(i)).append("\n");
+    int[] lengths = new int[count];
+    int row = 0, lineStart = 0;
+    for(int i = 0; i < text.length(); i++) {
+      if(text.charAt(i) != '\n') continue;
+
+      lengths[row++] = i - lineStart;
+      lineStart = i + 1;
     }
-    builder.append(lines.get(end.getRow()).substring(0, end.getColumn()));
+    lengths[row] = text.length() - lineStart;
+    return lengths;
+  }
+
+  public int getLineCount() {
+    return lineIndex.size();
+  }
+
+  public int getLineLength(int row) {
+    if(row < 0 || row >= lineIndex.size()) throw new IndexOutOfBoundsException("Row " + row + " doesn't exist.");
 
-    return builder.toString();
+    return lineIndex.get(row);
+  }
+
+  public long offsetOf(Location location) {
+    if(location == null) throw new IllegalArgumentException("Location can't be null.");
+
+    return lineIndex.sumBefore(location.getRow()) + location.getRow() + location.getColumn();
+  }
+
+  public Location locationOf(long offset) {
+    if(offset < 0 || offset > document.length()) throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the document.");
+
+    int row = lineIndex.indexOf(offset, 1);
+    return new Location(row, (int) (offset - lineIndex.sumBefore(row) - row));
+  }
+
+  /**
+   * Returns a read-only view of the current text that other threads can read while editing goes on.
+   */
+  public TextSnapshot snapshot() {
+    return new TextSnapshot(document.copy(), lineIndex.copy(), version);
+  }
+
+  /**
+   * Returns the document's line, word and character totals. They are counted once on the first call and kept
+   * up to date from then on.
+   */
+  public DocumentStatistics getStatistics() {
+    if(statistics == null) statistics = new DocumentStatistics(this);
+    return statistics;
+  }
+
+  public long getLength() {
+    return document.length();
+  }
+
+  /**
+   * Copies the text between two offsets into {@code builder} straight from the document's buffers, so callers
+   * that read the document in windows don't need a string per line.
+   */
+  public void appendText(StringBuilder builder, long start, long end) {
+    document.appendTo(builder, start, end);
+  }
+
+  public void forEachPiece(PieceTable.PieceVisitor visitor) throws IOException {
+    document.forEachPiece(visitor);
+  }
+
+  public LocationRange getSelectionRange() {
+    return selectionRange;
+  }
+
+  public String getTextRange(LocationRange range) {
+    if(range == null) throw new NullPointerException("Trying to get text while no selection is made.");
+
+    return document.substring(offsetOf(range.getStart()), offsetOf(range.getEnd()));
   }
 
   public void setSelectionRange(LocationRange selectionRange) {
@@ -69,95 +202,232 @@ public class TextEditorModel {
   }
 
   public void addCursorObserver(CursorObserver observer) {
+    addCursorObserver(observer, Delivery.IMMEDIATE);
+  }
+
+  public void addCursorObserver(CursorObserver observer, Delivery delivery) {
     if(observer == null) return;
 
-    this.cursorObservers.add(observer);
+    if(delivery == Delivery.COALESCED) dispatcher.getCursorObservers().add(observer);
+    else this.cursorObservers.add(observer);
   }
 
   public void removeCursorObserver(CursorObserver observer) {
     this.cursorObservers.remove(observer);
+    dispatcher.getCursorObservers().remove(observer);
   }
 
   public void addTextObserver(TextObserver observer) {
+    addTextObserver(observer, Delivery.IMMEDIATE);
+  }
+
+  public void addTextObserver(TextObserver observer, Delivery delivery) {
     if(observer == null) return;
 
-    this.textObservers.add(observer);
+    if(delivery == Delivery.COALESCED) dispatcher.getTextObservers().add(observer);
+    else this.textObservers.add(observer);
   }
 
   public void removeTextObserver(TextObserver observer) {
     this.textObservers.remove(observer);
+    dispatcher.getTextObservers().remove(observer);
   }
 
   public void addSelectionObserver(SelectionObserver observer) {
+    addSelectionObserver(observer, Delivery.IMMEDIATE);
+  }
+
+  public void addSelectionObserver(SelectionObserver observer, Delivery delivery) {
     if(observer == null) return;
 
-    this.selectionObservers.add(observer);
+    if(delivery == Delivery.COALESCED) dispatcher.getSelectionObservers().add(observer);
+    else this.selectionObservers.add(observer);
   }
 
   public void removeSelectionObserver(SelectionObserver observer) {
     this.selectionObservers.remove(observer);
+    dispatcher.getSelectionObservers().remove(observer);
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void addTextChangeObserver(TextChangeObserver observer) {
+    addTextChangeObserver(observer, Delivery.IMMEDIATE);
+  }
+
+  public void addTextChangeObserver(TextChangeObserver observer, Delivery delivery) {
+    if(observer == null) return;
+
+    if(delivery == Delivery.COALESCED) dispatcher.getTextChangeObservers().add(observer);
+    else this.textChangeObservers.add(observer);
+  }
+
+  public void removeTextChangeObserver(TextChangeObserver observer) {
+    this.textChangeObservers.remove(observer);
+    dispatcher.getTextChangeObservers().remove(observer);
+  }
+
+  private void fireTextChange(Location start, long offset, long removedLength, long insertedLength, int removedLines, int insertedLines) {
+    TextChangeEvent event = new TextChangeEvent(start, offset, removedLength, insertedLength, removedLines, insertedLines, ++version);
+    if(transactionDepth > 0) {
+      pendingChanges.add(event);
+      return;
+    }
+
+    notifyTextChangeObservers(event);
+  }
+
+  private void notifyTextChangeObservers(TextChangeEvent event) {
+    for(TextChangeObserver observer : textChangeObservers) {
+      observer.textChanged(event);
+    }
+    dispatcher.textChanged(event);
   }
 
   public void notifyTextObservers() {
+    if(transactionDepth > 0) {
+      textChanged = true;
+      return;
+    }
+
     for(TextObserver observer : textObservers) {
       observer.updateText();
     }
+    dispatcher.textChanged();
   }
 
   public void notifyCursorObservers() {
+    if(transactionDepth > 0) {
+      cursorChanged = true;
+      return;
+    }
+
     for(CursorObserver observer : cursorObservers) {
       observer.updateCursorLocation(cursorLocation);
     }
+    dispatcher.cursorMoved(cursorLocation);
   }
 
   public void notifySelectionObservers() {
+    if(transactionDepth > 0) {
+      selectionChanged = true;
+      return;
+    }
+
     for(SelectionObserver observer : selectionObservers) {
       observer.updateSelectionRange(selectionRange);
     }
+    dispatcher.selectionChanged(selectionRange);
+  }
+
+  /**
+   * Starts grouping edits. Until the matching {@link #commitTransaction()} observers aren't notified and
+   * all edits are recorded as a single undo action. Transactions can be nested.
+   */
+  public void beginTransaction() {
+    if(transactionDepth++ == 0) transaction = new TransactionAction();
+  }
+
+  public void commitTransaction() {
+    if(transactionDepth == 0) throw new IllegalStateException("No transaction to commit.");
+    if(--transactionDepth > 0) return;
+
+    CompoundAction action = transaction;
+    transaction = null;
+    if(!action.isEmpty()) UndoManager.instance().push(action);
+
+    if(!pendingChanges.isEmpty()) {
+      List<TextChangeEvent> changes = new ArrayList<>(pendingChanges);
+      pendingChanges.clear();
+      changes.forEach(this::notifyTextChangeObservers);
+    }
+    if(textChanged) {
+      textChanged = false;
+      notifyTextObservers();
+    }
+    if(cursorChanged) {
+      cursorChanged = false;
+      notifyCursorObservers();
+    }
+    if(selectionChanged) {
+      selectionChanged = false;
+      notifySelectionObservers();
+    }
+  }
+
+  public void batch(Runnable edits) {
+    if(edits == null) throw new IllegalArgumentException("Edits can't be null.");
+
+    beginTransaction();
+    try {
+      edits.run();
+    } finally {
+      commitTransaction();
+    }
+  }
+
+  private void pushAction(EditAction action) {
+    if(transaction != null) {
+      transaction.add(action);
+      return;
+    }
+
+    UndoManager.instance().push(action);
   }
 
   private void insert(String text, boolean pushAction) {
     if(text == null) return;
 
-    String line = lines.remove(cursorLocation.getRow());
-    String newLine = line.substring(0, cursorLocation.getColumn())+text.replace("\t", "    ")+line.substring(cursorLocation.getColumn());
-    LinkedList<String> split = new LinkedList<>(Arrays.asList(newLine.split("\n", -1)));
-
-    lines.addAll(cursorLocation.getRow(), split);
-    Location newCursorLocation = new Location(cursorLocation.getRow()+split.size()-1, split.size() == 1 ?
-        cursorLocation.getColumn()+text.length() :
-        split.getLast().length()-line.substring(cursorLocation.getColumn()).length()
-    );
+    String newText = text.replace("\t", "    ");
+    long offset = offsetOf(cursorLocation);
+    int[] split = lineLengthsOf(newText);
+    document.insert(offset, newText);
+    Location newCursorLocation = insertLines(cursorLocation, split);
 
     if(pushAction) {
-      UndoManager.instance().push(new EditAction() {
-        private final Location cursorStart = cursorLocation;
-        private final String newText = text;
-        private final LocationRange newTextRange = new LocationRange(cursorLocation, newCursorLocation);
-
-        @Override
-        public void execute_do() {
-          moveCursor(cursorStart);
-          insert(newText, false);
-        }
-
-        @Override
-        public void execute_undo() {
-          delete(newTextRange, false);
-          moveCursor(cursorStart);
-        }
-      });
+      pushAction(new InsertAction(cursorLocation, newText));
     }
 
+    fireTextChange(cursorLocation, offset, 0, newText.length(), 0, split.length-1);
     moveCursor(newCursorLocation);
     notifyTextObservers();
   }
 
+  private Location insertLines(Location location, int[] split) {
+    int row = location.getRow();
+    int column = location.getColumn();
+    int[] newLengths = split.clone();
+    newLengths[0] += column;
+    newLengths[newLengths.length-1] += getLineLength(row) - column;
+    lineIndex.replace(row, row + 1, newLengths);
+
+    return new Location(row+split.length-1, split.length == 1 ? column+split[0] : split[split.length-1]);
+  }
+
+  /**
+   * Makes the document read-only or editable again. While it is read-only inserts, deletes and applied edits
+   * are ignored, only {@link #append(TextBuffer, long, long, int[])} and {@link #reset(TextBuffer, int[])} still
+   * change the text.
+   */
+  public void setEditable(boolean editable) {
+    this.editable = editable;
+  }
+
+  public boolean isEditable() {
+    return editable;
+  }
+
   public void insert(String text) {
+    if(!editable) return;
+
     insert(text, true);
   }
 
   public void insert(char c) {
+    if(!editable) return;
+
     insert(Character.toString(c), true);
   }
 
@@ -171,14 +441,14 @@ public class TextEditorModel {
   public void moveCursorUp() {
     if(cursorLocation.getRow() == 0) return;
 
-    int newY = Math.min(cursorLocation.getColumn(), lines.get(cursorLocation.getRow()-1).length());
+    int newY = Math.min(cursorLocation.getColumn(), getLineLength(cursorLocation.getRow()-1));
     moveCursor(new Location(cursorLocation.getRow()-1, newY));
   }
 
   public void moveCursorDown() {
-    if(cursorLocation.getRow() == lines.size()-1) return;
+    if(cursorLocation.getRow() == getLineCount()-1) return;
 
-    int newY = Math.min(cursorLocation.getColumn(), lines.get(cursorLocation.getRow()+1).length());
+    int newY = Math.min(cursorLocation.getColumn(), getLineLength(cursorLocation.getRow()+1));
     moveCursor(new Location(cursorLocation.getRow()+1, newY));
   }
 
@@ -186,7 +456,7 @@ public class TextEditorModel {
     if(cursorLocation.getColumn() == 0) {
       if(cursorLocation.getRow() == 0) return;
 
-      moveCursor(new Location(cursorLocation.getRow()-1, lines.get(cursorLocation.getRow()-1).length()));
+      moveCursor(new Location(cursorLocation.getRow()-1, getLineLength(cursorLocation.getRow()-1)));
       return;
     }
 
@@ -194,8 +464,8 @@ public class TextEditorModel {
   }
 
   public void moveCursorRight() {
-    if(cursorLocation.getColumn() == lines.get(cursorLocation.getRow()).length()) {
-      if(cursorLocation.getRow() == lines.size()-1) return;
+    if(cursorLocation.getColumn() == getLineLength(cursorLocation.getRow())) {
+      if(cursorLocation.getRow() == getLineCount()-1) return;
 
       moveCursor(new Location(cursorLocation.getRow()+1, 0));
       return;
@@ -209,42 +479,32 @@ public class TextEditorModel {
     Location start = range.getStart();
     Location end = range.getEnd();
 
-    String newStartLine = lines.get(start.getRow()).substring(0, start.getColumn());
-    String newEndLine = lines.get(end.getRow()).substring(end.getColumn());
-
     if(pushAction) {
-      UndoManager.instance().push(new EditAction() {
-        private final Location cursorStart = range.getStart();
-        private final String removedText = getTextRange(range);
-
-        @Override
-        public void execute_do() {
-          delete(range, false);
-        }
-
-        @Override
-        public void execute_undo() {
-          moveCursor(cursorStart);
-          insert(removedText, false);
-        }
-      });
+      pushAction(new DeleteAction(start, getTextRange(range)));
     }
 
-    IntStream.rangeClosed(start.getRow(), end.getRow()).forEach(i -> lines.remove(start.getRow()));
-    lines.add(start.getRow(), newStartLine+newEndLine);
+    int[] newLength = {start.getColumn() + getLineLength(end.getRow()) - end.getColumn()};
+    long startOffset = offsetOf(start);
+    long endOffset = offsetOf(end);
+    document.delete(startOffset, endOffset);
+    lineIndex.replace(start.getRow(), end.getRow() + 1, newLength);
+    fireTextChange(start, startOffset, endOffset - startOffset, 0, end.getRow() - start.getRow(), 0);
     moveCursor(new Location(start.getRow(), start.getColumn()));
     notifyTextObservers();
   }
 
   public void deleteRange(LocationRange range) {
+    if(!editable) return;
+
     delete(range, true);
   }
 
   public void deleteBefore() {
+    if(!editable) return;
     if(cursorLocation.getColumn() == 0) {
       if(cursorLocation.getRow() == 0) return;
 
-      delete(new LocationRange(new Location(cursorLocation.getRow()-1, lines.get(cursorLocation.getRow()-1).length()), cursorLocation), true);
+      delete(new LocationRange(new Location(cursorLocation.getRow()-1, getLineLength(cursorLocation.getRow()-1)), cursorLocation), true);
       return;
     }
 
@@ -252,8 +512,9 @@ public class TextEditorModel {
   }
 
   public void deleteAfter() {
-    if(cursorLocation.getColumn() == lines.get(cursorLocation.getRow()).length()) {
-      if(cursorLocation.getRow() == lines.size()-1) return;
+    if(!editable) return;
+    if(cursorLocation.getColumn() == getLineLength(cursorLocation.getRow())) {
+      if(cursorLocation.getRow() == getLineCount()-1) return;
 
       delete(new LocationRange(cursorLocation, new Location(cursorLocation.getRow()+1, 0)), true);
       return;
@@ -262,8 +523,137 @@ public class TextEditorModel {
     delete(new LocationRange(cursorLocation, new Location(cursorLocation.getRow(), cursorLocation.getColumn() + 1)), true);
   }
 
+  /**
+   * Replaces every range returned by {@code matches} with {@code replacement} as one edit, see
+   * {@link #apply(TextEdits)}. Matches must be in document order and can't overlap.
+   */
+  public int replaceAll(Iterator<LocationRange> matches, String replacement) {
+    if(matches == null) throw new IllegalArgumentException("Matches can't be null.");
+    if(replacement == null) throw new IllegalArgumentException("Replacement can't be null.");
+    if(!editable) return 0;
+
+    TextEdits edits = new TextEdits();
+    while(matches.hasNext()) {
+      LocationRange match = matches.next();
+      edits.replace(offsetOf(match.getStart()), offsetOf(match.getEnd()), replacement);
+    }
+    apply(edits);
+    return edits.size();
+  }
+
+  /**
+   * Applies all edits as one change. The lines from the first to the last edit are updated in the line index
+   * at once, observers are notified once and a single undo action is recorded. Only the edited ranges are
+   * read and written, so memory follows the size of the edits rather than the span they cover. The cursor
+   * ends up after the last edit.
+   */
+  public void apply(TextEdits edits) {
+    if(edits == null) throw new IllegalArgumentException("Edits can't be null.");
+    if(edits.isEmpty() || !editable) return;
+    if(edits.getEnd(edits.size() - 1) > document.length()) throw new IndexOutOfBoundsException("Edits reach past the end of the document.");
+
+    EditsAction action = new EditsAction(edits);
+    if(action.isEmpty()) return;
+
+    pushAction(action);
+    action.execute_do();
+  }
+
+  /**
+   * Replaces every range, given as start and end pairs in document order, with its part of {@code texts}.
+   * The new pieces point into {@code texts} instead of copying it. Returns how much longer the document got.
+   */
+  private long replace(long[] ranges, String texts, int[] textEnds) {
+    int count = textEnds.length;
+    long spanStart = ranges[0];
+    long spanEnd = ranges[2*count - 1];
+    Location start = locationOf(spanStart);
+    Location end = locationOf(spanEnd);
+
+    int[] lengths = new int[end.getRow() - start.getRow() + 1];
+    int lines = 0;
+    int column = start.getColumn();
+    Location previous = start;
+    int textStart = 0;
+    for(int i = 0; i < count; i++) {
+      Location editStart = locationOf(ranges[2*i]);
+      if(editStart.getRow() == previous.getRow()) {
+        column += editStart.getColumn() - previous.getColumn();
+      } else {
+        PrimitiveIterator.OfInt unchanged = lineIndex.iterator(previous.getRow());
+        column += unchanged.nextInt() - previous.getColumn();
+        for(int row = previous.getRow(); row < editStart.getRow(); row++) {
+          if(lines == lengths.length) lengths = Arrays.copyOf(lengths, lengths.length * 2);
+          lengths[lines++] = column;
+          column = row + 1 < editStart.getRow() ? unchanged.nextInt() : editStart.getColumn();
+        }
+      }
+
+      for(int j = textStart; j < textEnds[i]; j++) {
+        if(texts.charAt(j) != '\n') {
+          column++;
+          continue;
+        }
+        if(lines == lengths.length) lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        lengths[lines++] = column;
+        column = 0;
+      }
+      textStart = textEnds[i];
+      previous = locationOf(ranges[2*i + 1]);
+    }
+    if(lines == lengths.length) lengths = Arrays.copyOf(lengths, lengths.length + 1);
+    lengths[lines++] = column + getLineLength(end.getRow()) - end.getColumn();
+
+    document.replace(ranges, new StringTextBuffer(texts), textEnds);
+
+    long removedLength = 0;
+    for(int i = 0; i < count; i++) {
+      removedLength += ranges[2*i + 1] - ranges[2*i];
+    }
+    lineIndex.replace(start.getRow(), end.getRow() + 1, Arrays.copyOf(lengths, lines));
+    fireTextChange(start, spanStart, spanEnd - spanStart, spanEnd - spanStart + texts.length() - removedLength, end.getRow() - start.getRow(), lines - 1);
+    notifyTextObservers();
+    return texts.length() - removedLength;
+  }
+
+  /**
+   * Replaces the text between two offsets, recording an undo action only if asked to. The removed text is
+   * only read when it has to be kept for undo.
+   */
+  void replace(long start, long end, String text, boolean pushAction) {
+    if(!editable) return;
+
+    Location location = locationOf(start);
+    if(pushAction) {
+      String removed = document.substring(start, end);
+      pushAction(new ReplaceAction(location, removed, text));
+      replace(location, endOf(location, removed), removed.length(), text);
+      return;
+    }
+    replace(location, locationOf(end), end - start, text);
+  }
+
+  private void replace(Location start, String removed, String inserted) {
+    replace(start, endOf(start, removed), removed.length(), inserted);
+  }
+
+  private void replace(Location start, Location end, long removedLength, String inserted) {
+    long offset = offsetOf(start);
+    int[] split = lineLengthsOf(inserted);
+    int[] newLengths = split.clone();
+    newLengths[0] += start.getColumn();
+    newLengths[newLengths.length-1] += getLineLength(end.getRow()) - end.getColumn();
+
+    document.delete(offset, offset + removedLength);
+    document.insert(offset, inserted);
+    lineIndex.replace(start.getRow(), end.getRow() + 1, newLengths);
+    fireTextChange(start, offset, removedLength, inserted.length(), end.getRow() - start.getRow(), split.length-1);
+    moveCursor(endOf(start, inserted));
+    notifyTextObservers();
+  }
+
   public Iterator<String> allLines() {
-    return new ModelIterator(0, lines.size());
+    return new ModelIterator(0, getLineCount());
   }
 
   public Iterator<String> linesRange(int start, int end) {
@@ -273,16 +663,338 @@ public class TextEditorModel {
     return new ModelIterator(start, end);
   }
 
+  private static Location endOf(Location start, String text) {
+    int lastBreak = text.lastIndexOf('\n');
+    if(lastBreak < 0) return new Location(start.getRow(), start.getColumn() + text.length());
+
+    int breaks = 0;
+    for(int i = 0; i <= lastBreak; i++) {
+      if(text.charAt(i) == '\n') breaks++;
+    }
+    return new Location(start.getRow() + breaks, text.length() - lastBreak - 1);
+  }
+
+  private class TransactionAction extends CompoundAction {
+    @Override
+    public void execute_do() {
+      batch(super::execute_do);
+    }
+
+    @Override
+    public void execute_undo() {
+      batch(super::execute_undo);
+    }
+  }
+
+  private abstract class TextEditAction implements EditAction {
+    protected Location start;
+    private String text;
+    private SpillFile.SpilledText spilled;
+    private final boolean typed;
+
+    protected TextEditAction(Location start, String text) {
+      this.start = start;
+      this.text = text;
+      this.typed = text.length() == 1 && text.charAt(0) != '\n';
+    }
+
+    protected String text() {
+      if(text == null) {
+        text = spilled.load();
+        spilled = null;
+      }
+      return text;
+    }
+
+    protected void setText(String text) {
+      this.text = text;
+      this.spilled = null;
+    }
+
+    /**
+     * Tells whether the action started as a single typed character, other than a line break. Merging typed
+     * characters into it keeps it typed.
+     */
+    protected boolean isTyped() {
+      return typed;
+    }
+
+    @Override
+    public long residentSize() {
+      return text == null ? 0 : text.length() * 2L;
+    }
+
+    @Override
+    public long spilledSize() {
+      return spilled == null ? 0 : spilled.size();
+    }
+
+    @Override
+    public void spill(SpillFile file) throws IOException {
+      if(text == null) {
+        spilled = spilled.moveTo(file);
+        return;
+      }
+
+      spilled = file.write(text);
+      text = null;
+    }
+  }
+
+  private class InsertAction extends TextEditAction {
+    private InsertAction(Location start, String text) {
+      super(start, text);
+    }
+
+    @Override
+    public void execute_do() {
+      moveCursor(start);
+      insert(text(), false);
+    }
+
+    @Override
+    public void execute_undo() {
+      delete(new LocationRange(start, endOf(start, text())), false);
+      moveCursor(start);
+    }
+
+    @Override
+    public boolean merge(EditAction next) {
+      if(!(next instanceof InsertAction)) return false;
+
+      InsertAction insert = (InsertAction) next;
+      if(!isTyped() || !insert.isTyped()) return false;
+      String text = text();
+      if(!insert.start.equals(endOf(start, text))) return false;
+      if(Character.isWhitespace(text.charAt(text.length()-1)) && !Character.isWhitespace(insert.text().charAt(0))) return false;
+
+      setText(text + insert.text());
+      return true;
+    }
+  }
+
+  private class DeleteAction extends TextEditAction {
+    private DeleteAction(Location start, String text) {
+      super(start, text);
+    }
+
+    @Override
+    public void execute_do() {
+      delete(new LocationRange(start, endOf(start, text())), false);
+    }
+
+    @Override
+    public void execute_undo() {
+      moveCursor(start);
+      insert(text(), false);
+    }
+
+    @Override
+    public boolean merge(EditAction next) {
+      if(!(next instanceof DeleteAction)) return false;
+
+      DeleteAction delete = (DeleteAction) next;
+      if(!isTyped() || !delete.isTyped()) return false;
+      String text = text();
+      char deleted = delete.text().charAt(0);
+
+      // like typing, deleting from whitespace into a word starts a new undo step
+      if(delete.start.equals(start)) {
+        if(Character.isWhitespace(text.charAt(text.length()-1)) && !Character.isWhitespace(deleted)) return false;
+
+        setText(text + delete.text());
+        return true;
+      }
+      if(endOf(delete.start, delete.text()).equals(start)) {
+        if(Character.isWhitespace(text.charAt(0)) && !Character.isWhitespace(deleted)) return false;
+
+        start = delete.start;
+        setText(delete.text() + text);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private class ReplaceAction implements EditAction {
+    private final Location start;
+    private String removed;
+    private String inserted;
+    private SpillFile.SpilledText spilledRemoved;
+    private SpillFile.SpilledText spilledInserted;
+
+    private ReplaceAction(Location start, String removed, String inserted) {
+      this.start = start;
+      this.removed = removed;
+      this.inserted = inserted;
+    }
+
+    private void load() {
+      if(removed != null) return;
+
+      removed = spilledRemoved.load();
+      inserted = spilledInserted.load();
+      spilledRemoved = null;
+      spilledInserted = null;
+    }
+
+    @Override
+    public void execute_do() {
+      load();
+      replace(start, removed, inserted);
+    }
+
+    @Override
+    public void execute_undo() {
+      load();
+      replace(start, inserted, removed);
+      moveCursor(start);
+    }
+
+    @Override
+    public long residentSize() {
+      return removed == null ? 0 : 2L * (removed.length() + inserted.length());
+    }
+
+    @Override
+    public long spilledSize() {
+      return spilledRemoved == null ? 0 : spilledRemoved.size() + spilledInserted.size();
+    }
+
+    @Override
+    public void spill(SpillFile file) throws IOException {
+      if(removed == null) {
+        SpillFile.SpilledText movedRemoved = spilledRemoved.moveTo(file);
+        spilledInserted = spilledInserted.moveTo(file);
+        spilledRemoved = movedRemoved;
+        return;
+      }
+
+      SpillFile.SpilledText writtenRemoved = file.write(removed);
+      spilledInserted = file.write(inserted);
+      spilledRemoved = writtenRemoved;
+      removed = null;
+      inserted = null;
+    }
+  }
+
+  /**
+   * Undo action for {@link #apply(TextEdits)}. It keeps the edited ranges and the removed and inserted texts,
+   * each set of texts back to back in one string, so it can be spilled with two writes.
+   */
+  private class EditsAction implements EditAction {
+    private final long[] ranges;
+    private final int[] removedEnds;
+    private final int[] insertedEnds;
+    private String removed;
+    private String inserted;
+    private SpillFile.SpilledText spilledRemoved;
+    private SpillFile.SpilledText spilledInserted;
+
+    private EditsAction(TextEdits edits) {
+      long[] ranges = new long[2 * edits.size()];
+      int[] removedEnds = new int[edits.size()];
+      int[] insertedEnds = new int[edits.size()];
+      StringBuilder removed = new StringBuilder();
+      StringBuilder inserted = new StringBuilder();
+      int count = 0;
+      for(int i = 0; i < edits.size(); i++) {
+        long start = edits.getStart(i);
+        long end = edits.getEnd(i);
+        if(start == end && edits.getTextLength(i) == 0) continue;
+
+        ranges[2*count] = start;
+        ranges[2*count + 1] = end;
+        document.appendTo(removed, start, end);
+        inserted.append(edits.getText(i));
+        removedEnds[count] = removed.length();
+        insertedEnds[count++] = inserted.length();
+      }
+
+      this.ranges = Arrays.copyOf(ranges, 2 * count);
+      this.removedEnds = Arrays.copyOf(removedEnds, count);
+      this.insertedEnds = Arrays.copyOf(insertedEnds, count);
+      this.removed = removed.toString();
+      this.inserted = inserted.toString();
+    }
+
+    private boolean isEmpty() {
+      return insertedEnds.length == 0;
+    }
+
+    private void load() {
+      if(removed != null) return;
+
+      removed = spilledRemoved.load();
+      inserted = spilledInserted.load();
+      spilledRemoved = null;
+      spilledInserted = null;
+    }
+
+    @Override
+    public void execute_do() {
+      load();
+      long delta = replace(ranges, inserted, insertedEnds);
+      moveCursor(locationOf(ranges[ranges.length - 1] + delta));
+    }
+
+    @Override
+    public void execute_undo() {
+      load();
+      long[] applied = new long[ranges.length];
+      long delta = 0;
+      for(int i = 0; i < insertedEnds.length; i++) {
+        applied[2*i] = ranges[2*i] + delta;
+        applied[2*i + 1] = applied[2*i] + insertedEnds[i] - (i == 0 ? 0 : insertedEnds[i - 1]);
+        delta = applied[2*i + 1] - ranges[2*i + 1];
+      }
+      replace(applied, removed, removedEnds);
+      moveCursor(locationOf(ranges[0]));
+    }
+
+    @Override
+    public long residentSize() {
+      long offsets = 8L * ranges.length + 4L * (removedEnds.length + insertedEnds.length);
+      return removed == null ? offsets : offsets + 2L * (removed.length() + inserted.length());
+    }
+
+    @Override
+    public long spilledSize() {
+      return spilledRemoved == null ? 0 : spilledRemoved.size() + spilledInserted.size();
+    }
+
+    @Override
+    public void spill(SpillFile file) throws IOException {
+      if(removed == null) {
+        SpillFile.SpilledText movedRemoved = spilledRemoved.moveTo(file);
+        spilledInserted = spilledInserted.moveTo(file);
+        spilledRemoved = movedRemoved;
+        return;
+      }
+
+      SpillFile.SpilledText writtenRemoved = file.write(removed);
+      spilledInserted = file.write(inserted);
+      spilledRemoved = writtenRemoved;
+      removed = null;
+      inserted = null;
+    }
+  }
+
   private class ModelIterator implements Iterator<String> {
     private int current;
     private final int end;
+    private final PrimitiveIterator.OfInt lengths;
+    private long offset;
 
     public ModelIterator(int start, int end) {
       if(start < 0) throw new IllegalArgumentException("Start index can't be smaller then 0.");
       if(end < start) throw new IllegalArgumentException("End must be equal or larger then start.");
+      if(end > getLineCount()) throw new IllegalArgumentException("End can't be larger then line count.");
 
       this.current = start;
       this.end = end;
+      this.lengths = lineIndex.iterator(start);
+      this.offset = lineIndex.sumBefore(start) + start;
     }
 
     @Override
@@ -294,7 +1006,11 @@ public class TextEditorModel {
     public String next() {
       if(!hasNext()) throw new NoSuchElementException("No more elements to iterate over.");
 
-      return lines.get(current++);
+      int length = lengths.nextInt();
+      String line = document.substring(offset, offset + length);
+      offset += length + 1;
+      current++;
+      return line;
     }
   }
 }
@@ -0,0 +1,111 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Changes to the document recorded as replacements of offset ranges, in document order and without overlaps.
+ * They can be prepared away from the model, for example from a {@link TextSnapshot} on another thread, and are
+ * then applied with {@link TextEditorModel#apply(TextEdits)} as a single edit. Replacement texts are kept back
+ * to back in one buffer, so recording an edit doesn't allocate a string.
+ */
+public class TextEdits {
+  private long[] ranges;
+  private int[] textEnds;
+  private final StringBuilder texts;
+  private int size;
+
+  public TextEdits() {
+    this.ranges = new long[32];
+    this.textEnds = new int[16];
+    this.texts = new StringBuilder();
+    this.size = 0;
+  }
+
+  /**
+   * Replaces the text between two offsets. Edits must be added in document order and can't overlap.
+   */
+  public void replace(long start, long end, String text) {
+    if(text == null) throw new IllegalArgumentException("Text can't be null.");
+    if(start < 0 || end < start) throw new IllegalArgumentException("Range [" + start + ", " + end + ") isn't valid.");
+    if(size > 0 && start < ranges[2*size - 1]) throw new IllegalArgumentException("Edits must be in order and can't overlap.");
+
+    if(size == textEnds.length) {
+      ranges = Arrays.copyOf(ranges, ranges.length * 2);
+      textEnds = Arrays.copyOf(textEnds, textEnds.length * 2);
+    }
+    ranges[2*size] = start;
+    ranges[2*size + 1] = end;
+    for(int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if(c == '\t') texts.append("    ");
+      else texts.append(c);
+    }
+    textEnds[size++] = texts.length();
+  }
+
+  public void insert(long offset, String text) {
+    replace(offset, offset, text);
+  }
+
+  public void delete(long start, long end) {
+    replace(start, end, "");
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public long getStart(int index) {
+    checkIndex(index);
+    return ranges[2*index];
+  }
+
+  public long getEnd(int index) {
+    checkIndex(index);
+    return ranges[2*index + 1];
+  }
+
+  public String getText(int index) {
+    checkIndex(index);
+    return texts.substring(index == 0 ? 0 : textEnds[index - 1], textEnds[index]);
+  }
+
+  public int getTextLength(int index) {
+    checkIndex(index);
+    return textEnds[index] - (index == 0 ? 0 : textEnds[index - 1]);
+  }
+
+  /**
+   * Moves the edits past a change made to the document after they were prepared. Edits before the change
+   * stay, edits after it are shifted. If an edit overlaps the changed text nothing is moved and false is
+   * returned, since it isn't known any more what the edit should change.
+   */
+  public boolean rebase(TextChangeEvent event) {
+    if(event == null) throw new IllegalArgumentException("Event can't be null.");
+
+    long changeStart = event.getOffset();
+    long changeEnd = changeStart + event.getRemovedLength();
+    int first = size;
+    for(int i = 0; i < size; i++) {
+      if(ranges[2*i + 1] <= changeStart) continue;
+      if(ranges[2*i] < changeEnd) return false;
+
+      first = i;
+      break;
+    }
+
+    long delta = event.getInsertedLength() - event.getRemovedLength();
+    for(int i = 2*first; i < 2*size; i++) {
+      ranges[i] += delta;
+    }
+    return true;
+  }
+
+  private void checkIndex(int index) {
+    if(index < 0 || index >= size) throw new IndexOutOfBoundsException("Edit " + index + " doesn't exist.");
+  }
+}
@@ -0,0 +1,94 @@
+package model;
+
+import model.text.LineTree;
+import model.text.PieceTable;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Read-only view of the document as it was at one version. Taking one is O(1) because it shares the piece table
+ * and line index nodes with the model, and since those are never modified in place it can be read from any
+ * thread while the model keeps being edited. Nodes that only old versions use are ordinary garbage once no
+ * snapshot refers to them any more.
+ */
+public class TextSnapshot {
+  private final PieceTable document;
+  private final LineTree lineIndex;
+  private final long version;
+
+  TextSnapshot(PieceTable document, LineTree lineIndex, long version) {
+    this.document = document;
+    this.lineIndex = lineIndex;
+    this.version = version;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public long getLength() {
+    return document.length();
+  }
+
+  public int getLineCount() {
+    return lineIndex.size();
+  }
+
+  public int getLineLength(int row) {
+    if(row < 0 || row >= lineIndex.size()) throw new IndexOutOfBoundsException("Row " + row + " doesn't exist.");
+
+    return lineIndex.get(row);
+  }
+
+  public String getLine(int row) {
+    long offset = offsetOf(row);
+    return document.substring(offset, offset + getLineLength(row));
+  }
+
+  /**
+   * Returns the offset of the first character of a row.
+   */
+  public long offsetOf(int row) {
+    return lineIndex.sumBefore(row) + row;
+  }
+
+  public long offsetOf(Location location) {
+    if(location == null) throw new IllegalArgumentException("Location can't be null.");
+
+    return offsetOf(location.getRow()) + location.getColumn();
+  }
+
+  public Location locationOf(long offset) {
+    if(offset < 0 || offset > document.length()) throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the document.");
+
+    int row = lineIndex.indexOf(offset, 1);
+    return new Location(row, (int) (offset - offsetOf(row)));
+  }
+
+  public void appendText(StringBuilder builder, long start, long end) {
+    document.appendTo(builder, start, end);
+  }
+
+  public void forEachPiece(PieceTable.PieceVisitor visitor) throws IOException {
+    document.forEachPiece(visitor);
+  }
+
+  /**
+   * Returns the lines as a read-only list. Lines are read from the snapshot when they are asked for.
+   */
+  public List<String> getLines() {
+    return new AbstractList<>() {
+      @Override
+      public String get(int index) {
+        return getLine(index);
+      }
+
+      @Override
+      public int size() {
+        return getLineCount();
+      }
+    };
+  }
+}
@@ -0,0 +1,131 @@
+package model.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Reads a whole UTF-8 file into memory. The bytes are cut into chunks at character boundaries, and the chunks
+ * are decoded and split into lines in parallel on the common fork-join pool before being joined in one pass.
+ */
+public class DocumentLoader {
+  private static final int CHUNK_SIZE = 1 << 20;
+
+  private DocumentLoader() {
+  }
+
+  public static LoadedText load(Path path) throws IOException {
+    return load(Files.readAllBytes(path));
+  }
+
+  public static LoadedText load(byte[] bytes) {
+    if(bytes == null) throw new IllegalArgumentException("Bytes can't be null.");
+
+    int[] bounds = chunkBounds(bytes);
+    Chunk[] chunks = IntStream.range(0, bounds.length - 1)
+        .parallel()
+        .mapToObj(i -> decode(bytes, bounds[i], bounds[i+1]))
+        .toArray(Chunk[]::new);
+
+    int length = 0, lineCount = 1;
+    for(Chunk chunk : chunks) {
+      length += chunk.text.length();
+      lineCount += chunk.lineLengths.length - 1;
+    }
+
+    StringBuilder text = new StringBuilder(length);
+    int[] lineLengths = new int[lineCount];
+    int row = 0;
+    for(Chunk chunk : chunks) {
+      text.append(chunk.text);
+      lineLengths[row] += chunk.lineLengths[0];
+      System.arraycopy(chunk.lineLengths, 1, lineLengths, row + 1, chunk.lineLengths.length - 1);
+      row += chunk.lineLengths.length - 1;
+    }
+
+    return new LoadedText(text.toString(), lineLengths);
+  }
+
+  private static int[] chunkBounds(byte[] bytes) {
+    int[] bounds = new int[bytes.length / CHUNK_SIZE + 2];
+    int count = 1;
+    int position = CHUNK_SIZE;
+    while(position < bytes.length) {
+      while(position < bytes.length && ((bytes[position] & 0xC0) == 0x80 || bytes[position-1] == '\r')) position++;
+      if(position >= bytes.length) break;
+
+      bounds[count++] = position;
+      position += CHUNK_SIZE;
+    }
+    bounds[count++] = bytes.length;
+    return Arrays.copyOf(bounds, count);
+  }
+
+  private static Chunk decode(byte[] bytes, int start, int end) {
+    CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer chars;
+    try {
+      chars = decoder.decode(ByteBuffer.wrap(bytes, start, end - start));
+    } catch(CharacterCodingException e) {
+      throw new IllegalStateException("Couldn't decode text.", e);
+    }
+
+    StringBuilder text = new StringBuilder(chars.remaining());
+    int[] lineLengths = new int[16];
+    int lineCount = 0, lineStart = 0;
+    for(int i = chars.position(); i < chars.limit(); i++) {
+      char c = chars.get(i);
+      if(c == '\r' && i + 1 < chars.limit() && chars.get(i + 1) == '\n') continue;
+
+      if(c == '\n') {
+        if(lineCount + 1 == lineLengths.length) lineLengths = Arrays.copyOf(lineLengths, lineLengths.length * 2);
+        lineLengths[lineCount++] = text.length() - lineStart;
+        lineStart = text.length() + 1;
+      }
+
+      if(c == '\t') text.append("    ");
+      else text.append(c);
+    }
+    lineLengths[lineCount++] = text.length() - lineStart;
+
+    return new Chunk(text.toString(), Arrays.copyOf(lineLengths, lineCount));
+  }
+
+  private static class Chunk {
+    private final String text;
+    private final int[] lineLengths;
+
+    private Chunk(String text, int[] lineLengths) {
+      this.text = text;
+      this.lineLengths = lineLengths;
+    }
+  }
+
+  public static class LoadedText {
+    private final String text;
+    private final int[] lineLengths;
+
+    private LoadedText(String text, int[] lineLengths) {
+      this.text = text;
+      this.lineLengths = lineLengths;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    public int[] getLineLengths() {
+      return lineLengths;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package model.io;
+
+import model.TextEditorModel;
+import model.TextSnapshot;
+import model.text.TextBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes a document as UTF-8 into a temporary file next to the target and moves it over the target once
+ * it is safely on disk. Text is encoded into a small set of reused direct buffers that are written together,
+ * and parts of a memory-mapped original that are still unchanged are copied straight from that file.
+ */
+public class DocumentSaver {
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int BUFFER_COUNT = 4;
+  private static final int CHAR_STEP = 1 << 13;
+  private final ByteBuffer[] buffers;
+  private final char[] chars;
+  private final StringBuilder pending;
+  private final CharsetEncoder encoder;
+  private int current;
+
+  public DocumentSaver() {
+    this.buffers = new ByteBuffer[BUFFER_COUNT];
+    for(int i = 0; i < BUFFER_COUNT; i++) {
+      buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    this.chars = new char[CHAR_STEP * 2];
+    this.pending = new StringBuilder(CHAR_STEP * 2);
+    this.encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  public void save(TextEditorModel model, Path path) throws IOException {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+
+    save(model.snapshot(), path);
+  }
+
+  /**
+   * Saves a snapshot of the document. Since a snapshot doesn't change, this can run on any thread while the
+   * document is being edited, but one saver can't be used by two threads at once.
+   */
+  public void save(TextSnapshot snapshot, Path path) throws IOException {
+    if(snapshot == null) throw new IllegalArgumentException("Snapshot can't be null.");
+    if(path == null) throw new IllegalArgumentException("Path can't be null.");
+
+    Path target = path.toAbsolutePath();
+    Path temp = createTemp(target);
+    try {
+      if(Files.exists(target)) copyPermissions(target, temp);
+      try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        write(snapshot, channel);
+        channel.force(true);
+      }
+      move(temp, target);
+    } catch(IOException | RuntimeException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+  }
+
+  private void write(TextSnapshot snapshot, FileChannel channel) throws IOException {
+    encoder.reset();
+    pending.setLength(0);
+    current = 0;
+    for(ByteBuffer buffer : buffers) buffer.clear();
+
+    snapshot.forEachPiece((buffer, start, end) -> {
+      while(buffer instanceof MappedTextBuffer && start < end) {
+        long[] aligned = ((MappedTextBuffer) buffer).alignedRange(start, end);
+        if(aligned == null) break;
+
+        encode(buffer, start, aligned[0], channel);
+        finish(channel);
+        ((MappedTextBuffer) buffer).transferTo(aligned[2], aligned[3], channel);
+        encoder.reset();
+        start = aligned[1];
+      }
+      encode(buffer, start, end, channel);
+    });
+
+    finish(channel);
+  }
+
+  private void finish(FileChannel channel) throws IOException {
+    encodePending(true, channel);
+    while(encoder.flush(buffers[current]).isOverflow()) nextBuffer(channel);
+    flush(channel);
+  }
+
+  private void encode(TextBuffer buffer, long start, long end, FileChannel channel) throws IOException {
+    while(start < end) {
+      long step = Math.min(CHAR_STEP, end - start);
+      buffer.appendTo(pending, start, start + step);
+      start += step;
+      encodePending(false, channel);
+    }
+  }
+
+  private void encodePending(boolean endOfInput, FileChannel channel) throws IOException {
+    int length = pending.length();
+    pending.getChars(0, length, chars, 0);
+    CharBuffer input = CharBuffer.wrap(chars, 0, length);
+
+    while(true) {
+      CoderResult result = encoder.encode(input, buffers[current], endOfInput);
+      if(result.isOverflow()) {
+        nextBuffer(channel);
+        continue;
+      }
+      if(result.isError()) result.throwException();
+      break;
+    }
+    pending.delete(0, input.position());
+  }
+
+  private void nextBuffer(FileChannel channel) throws IOException {
+    if(++current == BUFFER_COUNT) flush(channel);
+  }
+
+  private void flush(FileChannel channel) throws IOException {
+    int count = Math.min(current + 1, BUFFER_COUNT);
+    for(int i = 0; i < count; i++) buffers[i].flip();
+
+    long remaining = 0;
+    for(int i = 0; i < count; i++) remaining += buffers[i].remaining();
+    while(remaining > 0) remaining -= channel.write(buffers, 0, count);
+
+    for(ByteBuffer buffer : buffers) buffer.clear();
+    current = 0;
+  }
+
+  /**
+   * Creates an empty file next to the target. Unlike {@link Files#createTempFile}, which makes the file readable
+   * only by its owner, the file gets the default permissions, so a newly saved document has the same
+   * permissions as any other new file.
+   */
+  private static Path createTemp(Path target) throws IOException {
+    while(true) {
+      String suffix = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+      try {
+        return Files.createFile(target.resolveSibling("." + target.getFileName() + "." + suffix + ".tmp"));
+      } catch(FileAlreadyExistsException e) {
+        // another save picked the same name, try a different one
+      }
+    }
+  }
+
+  private static void copyPermissions(Path source, Path target) throws IOException {
+    try {
+      Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+    } catch(UnsupportedOperationException ignored) {
+    }
+  }
+
+  private static void move(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch(AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+}
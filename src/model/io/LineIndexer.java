@@ -0,0 +1,141 @@
+package model.io;
+
+import java.util.Arrays;
+
+/**
+ * Scans a {@link MappedTextBuffer} for line breaks without decoding it. Indexed text is handed to the
+ * listener in batches, each covering whole blocks of the buffer, so the document can be shown and edited
+ * while the rest of the file is still being indexed.
+ */
+public class LineIndexer implements Runnable {
+  private static final int BLOCK_BYTES = 1 << 16;
+  private static final int BLOCK_LINES = 64;
+  private static final int FIRST_BATCH_BYTES = 1 << 18;
+  private static final int BATCH_BYTES = 1 << 23;
+  private final MappedTextBuffer buffer;
+  private final IndexListener listener;
+  private volatile boolean cancelled;
+
+  public LineIndexer(MappedTextBuffer buffer, IndexListener listener) {
+    if(buffer == null) throw new IllegalArgumentException("Buffer can't be null.");
+    if(listener == null) throw new IllegalArgumentException("Listener can't be null.");
+
+    this.buffer = buffer;
+    this.listener = listener;
+    this.cancelled = false;
+  }
+
+  public MappedTextBuffer getBuffer() {
+    return buffer;
+  }
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  @Override
+  public void run() {
+    long size = buffer.byteSize();
+    long chars = 0, segment = 0;
+    long boundaryByte = 0, publishedByte = 0, publishedChars = 0;
+    int linesInBlock = 0;
+    boolean verbatim = true;
+    int expected = 0, low = 0x80, high = 0xBF;
+    int[] segments = new int[1024];
+    int segmentCount = 0;
+
+    for(long position = 0; position < size; position++) {
+      byte b = buffer.byteAt(position);
+      boolean continuation = (b & 0xC0) == 0x80;
+      if(!continuation && expected > 0) {
+        // a sequence cut short, it still belongs to the block before
+        verbatim = false;
+        expected = 0;
+      }
+
+      boolean blockFull = position - boundaryByte >= BLOCK_BYTES || linesInBlock >= BLOCK_LINES;
+      if(blockFull && !continuation && buffer.byteAt(position - 1) != '\r') {
+        buffer.addBoundary(position, chars, verbatim);
+        boundaryByte = position;
+        linesInBlock = 0;
+        verbatim = true;
+
+        if(position - publishedByte >= (publishedByte == 0 ? FIRST_BATCH_BYTES : BATCH_BYTES)) {
+          if(cancelled) return;
+
+          segments = append(segments, segmentCount++, (int) segment);
+          listener.linesIndexed(publishedChars, chars, Arrays.copyOf(segments, segmentCount), false);
+          segment = 0;
+          segmentCount = 0;
+          publishedByte = position;
+          publishedChars = chars;
+        }
+      }
+
+      int unsigned = b & 0xFF;
+      if(continuation) {
+        if(expected == 0 || unsigned < low || unsigned > high) {
+          verbatim = false;
+          expected = 0;
+        } else {
+          expected--;
+        }
+        low = 0x80;
+        high = 0xBF;
+      } else if(unsigned == '\r' || unsigned == '\t' || unsigned == 0xC0 || unsigned == 0xC1 || unsigned > 0xF4) {
+        verbatim = false;
+      } else if(unsigned >= 0xF0) {
+        expected = 3;
+        low = unsigned == 0xF0 ? 0x90 : 0x80;
+        high = unsigned == 0xF4 ? 0x8F : 0xBF;
+      } else if(unsigned >= 0xE0) {
+        expected = 2;
+        low = unsigned == 0xE0 ? 0xA0 : 0x80;
+        high = unsigned == 0xED ? 0x9F : 0xBF;
+      } else if(unsigned >= 0xC0) {
+        expected = 1;
+      }
+
+      int width;
+      if(b == '\n') {
+        segments = append(segments, segmentCount++, (int) segment);
+        segment = 0;
+        linesInBlock++;
+        chars++;
+        continue;
+      } else if(b == '\r') {
+        width = position + 1 < size && buffer.byteAt(position + 1) == '\n' ? 0 : 1;
+      } else if(b == '\t') {
+        width = 4;
+      } else if((b & 0xC0) == 0x80) {
+        width = 0;
+      } else if((b & 0xF8) == 0xF0) {
+        width = 2;
+      } else {
+        width = 1;
+      }
+      segment += width;
+      chars += width;
+    }
+
+    if(cancelled) return;
+
+    buffer.addBoundary(size, chars, verbatim && expected == 0);
+    segments = append(segments, segmentCount++, (int) segment);
+    listener.linesIndexed(publishedChars, chars, Arrays.copyOf(segments, segmentCount), true);
+  }
+
+  private static int[] append(int[] array, int index, int value) {
+    if(index == array.length) array = Arrays.copyOf(array, array.length * 2);
+
+    array[index] = value;
+    return array;
+  }
+
+  public interface IndexListener {
+    /**
+     * Called with each batch of indexed text, {@code last} is set for the batch that reaches the end of the file.
+     */
+    void linesIndexed(long charStart, long charEnd, int[] lineLengths, boolean last);
+  }
+}
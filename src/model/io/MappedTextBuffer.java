@@ -0,0 +1,211 @@
+package model.io;
+
+import model.text.TextBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Text of a UTF-8 file that is memory-mapped instead of read onto the heap. The file is split into blocks of
+ * a few dozen lines as it gets indexed, and a block is decoded only when some of its characters are needed.
+ * Line endings are normalized to {@code \n} and tabs are expanded the same way the model does on insert.
+ */
+public class MappedTextBuffer implements TextBuffer, Closeable {
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+  private static final int CACHED_BLOCKS = 128;
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long byteSize;
+  private long[] boundaryBytes;
+  private long[] boundaryChars;
+  private boolean[] verbatim;
+  private int boundaryCount;
+  private volatile long length;
+  private final Map<Integer, String> cache;
+
+  private MappedTextBuffer(Path path, FileChannel channel, MappedByteBuffer[] segments, long byteSize) {
+    this.path = path;
+    this.channel = channel;
+    this.segments = segments;
+    this.byteSize = byteSize;
+    this.boundaryBytes = new long[1024];
+    this.boundaryChars = new long[1024];
+    this.verbatim = new boolean[1024];
+    this.boundaryCount = 1;
+    this.length = 0;
+    this.cache = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+        return size() > CACHED_BLOCKS;
+      }
+    };
+  }
+
+  public static MappedTextBuffer map(Path path) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+      for(int i = 0; i < segments.length; i++) {
+        long position = (long) i << SEGMENT_BITS;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_MASK + 1, size - position));
+      }
+      return new MappedTextBuffer(path, channel, segments, size);
+    } catch(IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long byteSize() {
+    return byteSize;
+  }
+
+  byte byteAt(long position) {
+    return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+  }
+
+  /**
+   * Ends the current block. {@code verbatim} tells whether the block's bytes decode to exactly the block's
+   * text, that is whether it is valid UTF-8 without carriage returns or tabs.
+   */
+  synchronized void addBoundary(long byteOffset, long charOffset, boolean verbatim) {
+    if(boundaryCount == boundaryBytes.length) {
+      boundaryBytes = Arrays.copyOf(boundaryBytes, boundaryCount * 2);
+      boundaryChars = Arrays.copyOf(boundaryChars, boundaryCount * 2);
+      this.verbatim = Arrays.copyOf(this.verbatim, boundaryCount * 2);
+    }
+    this.verbatim[boundaryCount - 1] = verbatim;
+    boundaryBytes[boundaryCount] = byteOffset;
+    boundaryChars[boundaryCount++] = charOffset;
+    length = charOffset;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(long index) {
+    if(index < 0 || index >= length) throw new IndexOutOfBoundsException("Index " + index + " is outside of the indexed text.");
+
+    int block = blockOf(index);
+    return block(block).charAt((int) (index - blockChar(block)));
+  }
+
+  @Override
+  public void appendTo(StringBuilder builder, long start, long end) {
+    if(start < 0 || end < start || end > length) throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is outside of the indexed text.");
+
+    while(start < end) {
+      int block = blockOf(start);
+      long blockStart = blockChar(block);
+      String text = block(block);
+      int to = (int) Math.min(text.length(), end - blockStart);
+      builder.append(text, (int) (start - blockStart), to);
+      start = blockStart + to;
+    }
+  }
+
+  /**
+   * Finds the first run of whole blocks inside the character range whose bytes are exactly the UTF-8 encoding
+   * of their text and can therefore be copied straight from the file. Blocks with carriage returns, tabs or
+   * malformed bytes are left out, since their text differs from the bytes. Returns
+   * {@code {charStart, charEnd, byteStart, byteEnd}} or {@code null} if there is no such block in the range.
+   */
+  public synchronized long[] alignedRange(long charStart, long charEnd) {
+    int from = Arrays.binarySearch(boundaryChars, 0, boundaryCount, charStart);
+    if(from < 0) from = -from - 1;
+    int to = Arrays.binarySearch(boundaryChars, 0, boundaryCount, charEnd);
+    if(to < 0) to = -to - 2;
+
+    while(from < to && !verbatim[from]) from++;
+    if(from >= to) return null;
+
+    int last = from;
+    while(last < to && verbatim[last]) last++;
+    return new long[] {boundaryChars[from], boundaryChars[last], boundaryBytes[from], boundaryBytes[last]};
+  }
+
+  public void transferTo(long byteStart, long byteEnd, WritableByteChannel target) throws IOException {
+    while(byteStart < byteEnd) {
+      byteStart += channel.transferTo(byteStart, byteEnd - byteStart, target);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private synchronized int blockOf(long charIndex) {
+    int index = Arrays.binarySearch(boundaryChars, 0, boundaryCount, charIndex);
+    if(index >= 0) {
+      while(index < boundaryCount - 1 && boundaryChars[index + 1] == charIndex) index++;
+      return index;
+    }
+    return -index - 2;
+  }
+
+  private synchronized long blockChar(int block) {
+    return boundaryChars[block];
+  }
+
+  private synchronized String block(int block) {
+    String text = cache.get(block);
+    if(text != null) return text;
+
+    text = decode(boundaryBytes[block], boundaryBytes[block + 1], (int) (boundaryChars[block + 1] - boundaryChars[block]));
+    cache.put(block, text);
+    return text;
+  }
+
+  private String decode(long start, long end, int expectedLength) {
+    ByteBuffer bytes;
+    int segment = (int) (start >>> SEGMENT_BITS);
+    if(segment == (int) ((end - 1) >>> SEGMENT_BITS)) {
+      bytes = segments[segment].duplicate();
+      bytes.limit((int) (end - ((long) segment << SEGMENT_BITS)));
+      bytes.position((int) (start & SEGMENT_MASK));
+    } else {
+      byte[] copy = new byte[(int) (end - start)];
+      for(int i = 0; i < copy.length; i++) copy[i] = byteAt(start + i);
+      bytes = ByteBuffer.wrap(copy);
+    }
+
+    String text;
+    try {
+      text = StandardCharsets.UTF_8.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE)
+          .decode(bytes)
+          .toString()
+          .replace("\r\n", "\n")
+          .replace("\t", "    ");
+    } catch(IOException e) {
+      throw new IllegalStateException("Couldn't decode mapped text.", e);
+    }
+
+    if(text.length() > expectedLength) return text.substring(0, expectedLength);
+    if(text.length() < expectedLength) return text + "\uFFFD".repeat(expectedLength - text.length());
+    return text;
+  }
+}
@@ -0,0 +1,61 @@
+package model.manager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ListIterator;
+
+public class CompoundAction implements EditAction {
+  private final List<EditAction> actions;
+
+  public CompoundAction() {
+    this.actions = new ArrayList<>();
+  }
+
+  public void add(EditAction action) {
+    if(action == null) throw new IllegalArgumentException("Action can't be null.");
+
+    if(!actions.isEmpty() && actions.get(actions.size()-1).merge(action)) return;
+    actions.add(action);
+  }
+
+  public boolean isEmpty() {
+    return actions.isEmpty();
+  }
+
+  @Override
+  public void execute_do() {
+    for(EditAction action : actions) {
+      action.execute_do();
+    }
+  }
+
+  @Override
+  public void execute_undo() {
+    ListIterator<EditAction> iter = actions.listIterator(actions.size());
+    while(iter.hasPrevious()) {
+      iter.previous().execute_undo();
+    }
+  }
+
+  @Override
+  public long residentSize() {
+    long size = 0;
+    for(EditAction action : actions) size += action.residentSize();
+    return size;
+  }
+
+  @Override
+  public long spilledSize() {
+    long size = 0;
+    for(EditAction action : actions) size += action.spilledSize();
+    return size;
+  }
+
+  @Override
+  public void spill(SpillFile file) throws IOException {
+    for(EditAction action : actions) {
+      action.spill(file);
+    }
+  }
+}
@@ -1,6 +1,31 @@
 package model.manager;
 
+import java.io.IOException;
+
 public interface EditAction {
   void execute_do();
   void execute_undo();
+
+  /**
+   * Tries to fold an action pushed right after this one into it, so both are undone and redone together.
+   * Returns {@code false} if the actions can't be merged.
+   */
+  default boolean merge(EditAction next) {
+    return false;
+  }
+
+  default long residentSize() {
+    return 0;
+  }
+
+  default long spilledSize() {
+    return 0;
+  }
+
+  /**
+   * Moves the bulk of this action to the spill file. The action must load it back by itself once it is
+   * executed again. Text already spilled to another file is copied over, so that file can be dropped.
+   */
+  default void spill(SpillFile file) throws IOException {
+  }
 }
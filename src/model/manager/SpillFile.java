@@ -0,0 +1,100 @@
+package model.manager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only temporary file holding text of undo history that didn't fit into the history budget. Text
+ * that is loaded back or belongs to dropped actions isn't removed, the file is replaced by a new one instead
+ * once little of it is still used.
+ */
+public class SpillFile {
+  private final Path path;
+  private final FileChannel channel;
+  private long position;
+
+  public SpillFile() throws IOException {
+    this.path = Files.createTempFile("undo-history", ".spill");
+    this.path.toFile().deleteOnExit();
+    this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.position = 0;
+  }
+
+  public synchronized SpilledText write(String text) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(text.length() * 2);
+    bytes.asCharBuffer().put(text);
+
+    long start = position;
+    while(bytes.hasRemaining()) {
+      position += channel.write(bytes, position);
+    }
+    return new SpilledText(this, start, text.length());
+  }
+
+  private synchronized String read(long start, int length) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(length * 2);
+    while(bytes.hasRemaining()) {
+      if(channel.read(bytes, start + bytes.position()) < 0) throw new IOException("Spill file " + path + " is truncated.");
+    }
+    bytes.flip();
+    return bytes.asCharBuffer().toString();
+  }
+
+  /**
+   * Returns how many bytes were written since the file was created or cleared, used or not.
+   */
+  public synchronized long length() {
+    return position;
+  }
+
+  public synchronized void clear() throws IOException {
+    channel.truncate(0);
+    position = 0;
+  }
+
+  /**
+   * Closes and deletes the file. Text still spilled to it can't be loaded afterwards.
+   */
+  public synchronized void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(path);
+  }
+
+  public static class SpilledText {
+    private final SpillFile file;
+    private final long start;
+    private final int length;
+
+    private SpilledText(SpillFile file, long start, int length) {
+      this.file = file;
+      this.start = start;
+      this.length = length;
+    }
+
+    public long size() {
+      return length * 2L;
+    }
+
+    /**
+     * Returns the same text spilled to another file, copying it if it isn't there already.
+     */
+    public SpilledText moveTo(SpillFile target) throws IOException {
+      if(target == file) return this;
+
+      return target.write(file.read(start, length));
+    }
+
+    public String load() {
+      try {
+        return file.read(start, length);
+      } catch(IOException e) {
+        throw new UncheckedIOException("Couldn't read spilled undo history.", e);
+      }
+    }
+  }
+}
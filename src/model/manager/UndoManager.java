@@ -2,22 +2,42 @@ package model.manager;
 
 import model.manager.EditAction;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
 
 public class UndoManager {
   private static final UndoManager singleton = new UndoManager();
+  private static final long DEFAULT_MERGE_INTERVAL = 1000;
+  private static final long DEFAULT_HISTORY_BUDGET = 64L << 20;
+  private static final long MIN_ROTATED_SPILL = 1L << 20;
   private final Stack<EditAction> undoStack;
   private final Stack<EditAction> redoStack;
   private final List<StackStatusListener> undoStackListeners;
   private final List<StackStatusListener> redoStackListeners;
+  private long mergeInterval;
+  private long lastPushTime;
+  private long historyBudget;
+  private long residentSize;
+  private long spilledSize;
+  private int spilledCount;
+  private int spilledRedoCount;
+  private SpillFile spillFile;
 
   private UndoManager() {
     this.undoStack = new Stack<>();
     this.redoStack = new Stack<>();
     this.undoStackListeners = new ArrayList<>();
     this.redoStackListeners = new ArrayList<>();
+    this.mergeInterval = DEFAULT_MERGE_INTERVAL;
+    this.lastPushTime = Long.MIN_VALUE;
+    this.historyBudget = DEFAULT_HISTORY_BUDGET;
+    this.residentSize = 0;
+    this.spilledSize = 0;
+    this.spilledCount = 0;
+    this.spilledRedoCount = 0;
+    this.spillFile = null;
   }
 
   public static UndoManager instance() {
@@ -56,40 +76,192 @@ public class UndoManager {
     undoStackListeners.remove(listener);
   }
 
+  public long getMergeInterval() {
+    return mergeInterval;
+  }
+
+  public void setMergeInterval(long mergeInterval) {
+    if(mergeInterval < 0) throw new IllegalArgumentException("Merge interval can't be negative.");
+
+    this.mergeInterval = mergeInterval;
+  }
+
+  public long getHistoryBudget() {
+    return historyBudget;
+  }
+
+  public void setHistoryBudget(long historyBudget) {
+    if(historyBudget < 0) throw new IllegalArgumentException("History budget can't be negative.");
+
+    this.historyBudget = historyBudget;
+    enforceBudget();
+  }
+
+  public long getResidentHistorySize() {
+    return residentSize;
+  }
+
+  public long getSpilledHistorySize() {
+    return spilledSize;
+  }
+
+  private void forget(EditAction action) {
+    residentSize -= action.residentSize();
+    spilledSize -= action.spilledSize();
+  }
+
+  private void remember(EditAction action) {
+    residentSize += action.residentSize();
+    spilledSize += action.spilledSize();
+  }
+
+  /**
+   * Spills the oldest undo actions and then the redo actions furthest from being redone until the history
+   * fits into the budget. The action on top of each stack is always kept in memory.
+   */
+  private void enforceBudget() {
+    while(residentSize > historyBudget && spilledCount < undoStack.size() - 1) {
+      if(!spill(undoStack.get(spilledCount))) return;
+      spilledCount++;
+    }
+    while(residentSize > historyBudget && spilledRedoCount < redoStack.size() - 1) {
+      if(!spill(redoStack.get(spilledRedoCount))) return;
+      spilledRedoCount++;
+    }
+    rotateSpillFile();
+  }
+
+  private boolean spill(EditAction action) {
+    forget(action);
+    try {
+      if(spillFile == null) spillFile = new SpillFile();
+      action.spill(spillFile);
+      return true;
+    } catch(IOException e) {
+      e.printStackTrace();
+      return false;
+    } finally {
+      remember(action);
+    }
+  }
+
+  /**
+   * Moves the text still spilled into a new file once it takes up only a small part of the current one, which
+   * keeps growing as spilled text is loaded back or dropped with its actions.
+   */
+  private void rotateSpillFile() {
+    if(spillFile == null || spillFile.length() < MIN_ROTATED_SPILL || spilledSize > spillFile.length() / 4) return;
+
+    try {
+      if(spilledSize == 0) {
+        spillFile.clear();
+        return;
+      }
+
+      SpillFile next = new SpillFile();
+      for(int i = 0; i < spilledCount; i++) moveSpilled(undoStack.get(i), next);
+      for(int i = 0; i < spilledRedoCount; i++) moveSpilled(redoStack.get(i), next);
+      spillFile.delete();
+      spillFile = next;
+    } catch(IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private void moveSpilled(EditAction action, SpillFile next) throws IOException {
+    forget(action);
+    try {
+      action.spill(next);
+    } finally {
+      remember(action);
+    }
+  }
+
   public void undo() {
     if(undoStack.empty()) return;
+    lastPushTime = Long.MIN_VALUE;
 
     EditAction action = undoStack.pop();
+    spilledCount = Math.min(spilledCount, undoStack.size());
     if(undoStack.empty()) notifyUndoListeners();
 
+    forget(action);
     action.execute_undo();
+    remember(action);
 
     boolean wasEmpty = redoStack.empty();
     redoStack.push(action);
     if(wasEmpty) notifyRedoListeners();
+    enforceBudget();
   }
 
   public void redo() {
     if(redoStack.empty()) return;
+    lastPushTime = Long.MIN_VALUE;
 
     EditAction action = redoStack.pop();
+    spilledRedoCount = Math.min(spilledRedoCount, redoStack.size());
     if(redoStack.empty()) notifyRedoListeners();
 
+    forget(action);
     action.execute_do();
+    remember(action);
 
     boolean wasEmpty = undoStack.empty();
     undoStack.push(action);
     if(wasEmpty) notifyUndoListeners();
+    enforceBudget();
   }
 
   public void push(EditAction action) {
     if(!redoStack.empty()) {
+      redoStack.forEach(this::forget);
       redoStack.clear();
+      spilledRedoCount = 0;
       notifyRedoListeners();
     }
 
+    long now = System.currentTimeMillis();
+    boolean recent = mergeInterval > 0 && lastPushTime != Long.MIN_VALUE && now - lastPushTime <= mergeInterval;
+    lastPushTime = now;
+    if(recent && !undoStack.empty()) {
+      EditAction top = undoStack.peek();
+      forget(top);
+      boolean merged = top.merge(action);
+      remember(top);
+      if(merged) {
+        enforceBudget();
+        return;
+      }
+    }
+
     boolean wasEmpty = undoStack.empty();
     undoStack.push(action);
+    remember(action);
     if(wasEmpty) notifyUndoListeners();
+    enforceBudget();
+  }
+
+  public void clear() {
+    lastPushTime = Long.MIN_VALUE;
+    residentSize = 0;
+    spilledSize = 0;
+    spilledCount = 0;
+    spilledRedoCount = 0;
+    if(spillFile != null) {
+      try {
+        spillFile.clear();
+      } catch(IOException e) {
+        e.printStackTrace();
+      }
+    }
+    if(!undoStack.empty()) {
+      undoStack.clear();
+      notifyUndoListeners();
+    }
+    if(!redoStack.empty()) {
+      redoStack.clear();
+      notifyRedoListeners();
+    }
   }
 }
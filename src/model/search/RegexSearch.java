@@ -0,0 +1,143 @@
+package model.search;
+
+import model.Location;
+import model.LocationRange;
+import model.TextSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Regular expression search over a {@link TextSnapshot}. The lines are cut into chunks that are matched in
+ * parallel on the common fork-join pool, one line at a time, so a match never spans lines. Each chunk's matches
+ * are handed to the listener as soon as every chunk before it is done, so results arrive in document order
+ * while the rest of the document is still being searched.
+ */
+public class RegexSearch {
+  private static final int CHUNK_LINES = 2048;
+  private final Pattern pattern;
+
+  public RegexSearch(Pattern pattern) {
+    if(pattern == null) throw new IllegalArgumentException("Pattern can't be null.");
+
+    this.pattern = pattern;
+  }
+
+  public Pattern getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Starts searching and returns right away. The listener is called from pool threads, never concurrently,
+   * and isn't called any more once the returned task is cancelled.
+   */
+  public Task search(TextSnapshot snapshot, MatchListener listener) {
+    if(snapshot == null) throw new IllegalArgumentException("Snapshot can't be null.");
+    if(listener == null) throw new IllegalArgumentException("Listener can't be null.");
+
+    Task task = new Task(snapshot, listener);
+    ForkJoinPool.commonPool().execute(new ChunkAction(task, 0, task.results.size()));
+    return task;
+  }
+
+  public interface MatchListener {
+    void matchesFound(List<LocationRange> matches);
+
+    void searchFinished();
+  }
+
+  public class Task {
+    private final TextSnapshot snapshot;
+    private final MatchListener listener;
+    private final List<List<LocationRange>> results;
+    private int delivered;
+    private volatile boolean cancelled;
+
+    private Task(TextSnapshot snapshot, MatchListener listener) {
+      this.snapshot = snapshot;
+      this.listener = listener;
+      this.results = new ArrayList<>(Collections.nCopies((snapshot.getLineCount() + CHUNK_LINES - 1) / CHUNK_LINES, null));
+      this.delivered = 0;
+      this.cancelled = false;
+    }
+
+    public TextSnapshot getSnapshot() {
+      return snapshot;
+    }
+
+    public void cancel() {
+      cancelled = true;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+      return delivered == results.size();
+    }
+
+    private void search(int chunk) {
+      int from = chunk * CHUNK_LINES;
+      int to = Math.min(from + CHUNK_LINES, snapshot.getLineCount());
+      long start = snapshot.offsetOf(from);
+      long end = snapshot.offsetOf(to - 1) + snapshot.getLineLength(to - 1);
+
+      StringBuilder text = new StringBuilder((int) (end - start));
+      snapshot.appendText(text, start, end);
+
+      List<LocationRange> matches = new ArrayList<>();
+      Matcher matcher = pattern.matcher(text);
+      int lineStart = 0;
+      for(int row = from; row < to && !cancelled; row++) {
+        int lineEnd = lineStart + snapshot.getLineLength(row);
+        matcher.region(lineStart, lineEnd);
+        while(matcher.find()) {
+          matches.add(new LocationRange(new Location(row, matcher.start() - lineStart), new Location(row, matcher.end() - lineStart)));
+        }
+        lineStart = lineEnd + 1;
+      }
+
+      completed(chunk, matches);
+    }
+
+    private synchronized void completed(int chunk, List<LocationRange> matches) {
+      results.set(chunk, matches);
+      while(!cancelled && delivered < results.size() && results.get(delivered) != null) {
+        List<LocationRange> next = results.set(delivered++, null);
+        if(!next.isEmpty()) listener.matchesFound(next);
+        if(delivered == results.size()) listener.searchFinished();
+      }
+    }
+  }
+
+  private static class ChunkAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final Task task;
+    private final int from;
+    private final int to;
+
+    private ChunkAction(Task task, int from, int to) {
+      this.task = task;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if(task.cancelled) return;
+      if(to - from == 1) {
+        task.search(from);
+        return;
+      }
+
+      int middle = (from + to) >>> 1;
+      invokeAll(new ChunkAction(task, from, middle), new ChunkAction(task, middle, to));
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package model.search;
+
+import model.Location;
+import model.LocationRange;
+import model.TextEditorModel;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Plain text search over a {@link TextEditorModel} using Boyer-Moore-Horspool. The document is read in windows
+ * copied straight out of its buffers, so no line strings are built and a search only reads as far as the match
+ * it returns. Matches don't overlap and come back in document order.
+ */
+public class TextSearch {
+  private static final int WINDOW_SIZE = 1 << 16;
+  private final String pattern;
+  private final boolean ignoreCase;
+  private final boolean wholeWord;
+  private final char[] folded;
+  private final int[] shifts;
+
+  public TextSearch(String pattern, boolean ignoreCase, boolean wholeWord) {
+    if(pattern == null || pattern.isEmpty()) throw new IllegalArgumentException("Pattern can't be null or empty.");
+
+    this.pattern = pattern;
+    this.ignoreCase = ignoreCase;
+    this.wholeWord = wholeWord;
+    this.folded = new char[pattern.length()];
+    for(int i = 0; i < folded.length; i++) {
+      folded[i] = fold(pattern.charAt(i));
+    }
+
+    // shifts are kept per low byte of a character, colliding characters get the smaller and still safe shift
+    this.shifts = new int[256];
+    Arrays.fill(shifts, folded.length);
+    for(int i = 0; i < folded.length - 1; i++) {
+      shifts[folded[i] & 0xFF] = folded.length - 1 - i;
+    }
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  public boolean isIgnoreCase() {
+    return ignoreCase;
+  }
+
+  public boolean isWholeWord() {
+    return wholeWord;
+  }
+
+  /**
+   * Returns the matches from {@code from} to the end of the document. The iterator fails with a
+   * {@link ConcurrentModificationException} if the document is edited while it is used.
+   */
+  public Iterator<LocationRange> find(TextEditorModel model, Location from) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+    if(from == null) throw new IllegalArgumentException("Location can't be null.");
+
+    return new MatchIterator(model, model.offsetOf(from));
+  }
+
+  public Iterator<LocationRange> find(TextEditorModel model) {
+    return find(model, new Location(0, 0));
+  }
+
+  private char fold(char c) {
+    return ignoreCase ? Character.toLowerCase(Character.toUpperCase(c)) : c;
+  }
+
+  static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private class MatchIterator implements Iterator<LocationRange> {
+    private final TextEditorModel model;
+    private final long version;
+    private final long length;
+    private final StringBuilder builder;
+    private final char[] window;
+    private long windowStart;
+    private long windowEnd;
+    private long position;
+    private LocationRange next;
+
+    private MatchIterator(TextEditorModel model, long from) {
+      this.model = model;
+      this.version = model.getVersion();
+      this.length = model.getLength();
+      this.builder = new StringBuilder();
+      this.window = new char[Math.max(WINDOW_SIZE, 4 * (folded.length + 2))];
+      this.windowStart = 0;
+      this.windowEnd = 0;
+      this.position = from;
+      this.next = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if(model.getVersion() != version) throw new ConcurrentModificationException("Document changed during search.");
+      if(next == null) next = advance();
+      return next != null;
+    }
+
+    @Override
+    public LocationRange next() {
+      if(!hasNext()) throw new NoSuchElementException();
+
+      LocationRange match = next;
+      next = null;
+      return match;
+    }
+
+    private LocationRange advance() {
+      int m = folded.length;
+      while(position + m <= length) {
+        // keep one character on each side of the candidate in the window for the whole word check
+        if(position < windowStart + 1 && position > 0 || Math.min(position + m + 1, length) > windowEnd) load(Math.max(position - 1, 0));
+
+        int base = (int) (position - windowStart);
+        int i = m - 1;
+        while(i >= 0 && fold(window[base + i]) == folded[i]) i--;
+
+        if(i < 0 && (!wholeWord || isWordBoundary(base, m))) {
+          LocationRange match = new LocationRange(model.locationOf(position), model.locationOf(position + m));
+          position += m;
+          return match;
+        }
+        position += shifts[fold(window[base + m - 1]) & 0xFF];
+      }
+      return null;
+    }
+
+    private boolean isWordBoundary(int base, int m) {
+      long start = windowStart + base;
+      if(start > 0 && isWordChar(window[base - 1]) && isWordChar(window[base])) return false;
+      return start + m >= length || !isWordChar(window[base + m]) || !isWordChar(window[base + m - 1]);
+    }
+
+    private void load(long start) {
+      long end = Math.min(start + window.length, length);
+      builder.setLength(0);
+      model.appendText(builder, start, end);
+      builder.getChars(0, builder.length(), window, 0);
+      windowStart = start;
+      windowEnd = end;
+    }
+  }
+}
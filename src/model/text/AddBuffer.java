@@ -0,0 +1,59 @@
+package model.text;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only buffer holding all text typed or pasted into the document.
+ * Text is kept in fixed size chunks so appending never copies what is already stored. Stored text never
+ * changes, so other threads can read ranges that were appended before they were handed a copy of the document.
+ */
+public class AddBuffer implements TextBuffer {
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private final List<char[]> chunks;
+  private volatile long length;
+
+  public AddBuffer() {
+    this.chunks = new CopyOnWriteArrayList<>();
+    this.length = 0;
+  }
+
+  public long append(String text) {
+    long start = length;
+    int copied = 0;
+    while(copied < text.length()) {
+      int offset = (int) (length & CHUNK_MASK);
+      if(offset == 0) chunks.add(new char[CHUNK_SIZE]);
+
+      int count = Math.min(CHUNK_SIZE - offset, text.length() - copied);
+      text.getChars(copied, copied + count, chunks.get(chunks.size()-1), offset);
+      copied += count;
+      length += count;
+    }
+
+    return start;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(long index) {
+    return chunks.get((int) (index >>> CHUNK_BITS))[(int) (index & CHUNK_MASK)];
+  }
+
+  @Override
+  public void appendTo(StringBuilder builder, long start, long end) {
+    while(start < end) {
+      char[] chunk = chunks.get((int) (start >>> CHUNK_BITS));
+      int offset = (int) (start & CHUNK_MASK);
+      int count = (int) Math.min(CHUNK_SIZE - offset, end - start);
+      builder.append(chunk, offset, count);
+      start += count;
+    }
+  }
+}
@@ -0,0 +1,327 @@
+package model.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Sequence of per-line int records (for the model the length of each line) kept in a chunked B+-tree.
+ * Every node knows how many records and what total it covers, so index lookup, prefix sums and finding the
+ * record containing a given offset are O(log n). Nodes are never modified in place, edits copy only the
+ * path they touch.
+ */
+public class LineTree {
+  private static final int MAX_WIDTH = 64;
+  private static final int MIN_WIDTH = MAX_WIDTH / 4;
+  private static final int[] EMPTY = new int[0];
+  private Node root;
+
+  public LineTree() {
+    this.root = new Leaf(EMPTY);
+  }
+
+  public LineTree(int[] values) {
+    this();
+    replace(0, 0, values);
+  }
+
+  private LineTree(Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Returns a tree with the same records in O(1). Nodes are shared, and since they are never modified, later
+   * edits to either tree don't show up in the other.
+   */
+  public LineTree copy() {
+    return new LineTree(root);
+  }
+
+  public int size() {
+    return root.count;
+  }
+
+  public long sum() {
+    return root.sum;
+  }
+
+  public int get(int index) {
+    checkIndex(index);
+
+    Node node = root;
+    while(node instanceof Inner) {
+      for(Node child : ((Inner) node).children) {
+        if(index < child.count) {
+          node = child;
+          break;
+        }
+        index -= child.count;
+      }
+    }
+    return ((Leaf) node).values[index];
+  }
+
+  public long sumBefore(int index) {
+    if(index < 0 || index > size()) throw new IndexOutOfBoundsException("Index " + index + " is out of bounds.");
+
+    long sum = 0;
+    Node node = root;
+    while(node instanceof Inner) {
+      for(Node child : ((Inner) node).children) {
+        if(index < child.count) {
+          node = child;
+          break;
+        }
+        index -= child.count;
+        sum += child.sum;
+      }
+      if(index == 0) return sum;
+    }
+
+    int[] values = ((Leaf) node).values;
+    for(int i = 0; i < index; i++) sum += values[i];
+    return sum;
+  }
+
+  /**
+   * Finds the record containing {@code target} when every record occupies its value plus {@code extra}
+   * units. Targets past the end map to the last record.
+   */
+  public int indexOf(long target, int extra) {
+    if(size() == 0) throw new NoSuchElementException("Tree is empty.");
+    if(target < 0) throw new IndexOutOfBoundsException("Target can't be negative.");
+
+    int index = 0;
+    Node node = root;
+    while(node instanceof Inner) {
+      Node[] children = ((Inner) node).children;
+      for(int i = 0; i < children.length; i++) {
+        long weight = children[i].sum + (long) extra * children[i].count;
+        if(target < weight || i == children.length-1) {
+          node = children[i];
+          break;
+        }
+        target -= weight;
+        index += children[i].count;
+      }
+    }
+
+    int[] values = ((Leaf) node).values;
+    for(int i = 0; i < values.length - 1; i++) {
+      long weight = values[i] + extra;
+      if(target < weight) return index + i;
+      target -= weight;
+    }
+    return index + values.length - 1;
+  }
+
+  public void set(int index, int value) {
+    checkIndex(index);
+
+    replace(index, index + 1, new int[] {value});
+  }
+
+  public void replace(int from, int to, int[] values) {
+    if(from < 0 || to < from || to > size()) throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") is out of bounds.");
+    if(values == null) throw new IllegalArgumentException("Values can't be null.");
+
+    List<Node> nodes = replace(root, from, to, values);
+    while(nodes.size() > 1) {
+      nodes = group(nodes);
+    }
+
+    Node newRoot = nodes.isEmpty() ? new Leaf(EMPTY) : nodes.get(0);
+    while(newRoot instanceof Inner && ((Inner) newRoot).children.length == 1) {
+      newRoot = ((Inner) newRoot).children[0];
+    }
+    root = newRoot;
+  }
+
+  public PrimitiveIterator.OfInt iterator(int from) {
+    if(from < 0 || from > size()) throw new IndexOutOfBoundsException("Index " + from + " is out of bounds.");
+
+    return new LeafIterator(root, from);
+  }
+
+  private void checkIndex(int index) {
+    if(index < 0 || index >= size()) throw new IndexOutOfBoundsException("Index " + index + " is out of bounds.");
+  }
+
+  private static List<Node> replace(Node node, int from, int to, int[] values) {
+    if(node instanceof Leaf) {
+      int[] old = ((Leaf) node).values;
+      int[] merged = new int[old.length - (to - from) + values.length];
+      System.arraycopy(old, 0, merged, 0, from);
+      System.arraycopy(values, 0, merged, from, values.length);
+      System.arraycopy(old, to, merged, from + values.length, old.length - to);
+      return leaves(merged);
+    }
+
+    List<Node> children = new ArrayList<>();
+    boolean inserted = false;
+    int start = 0;
+    for(Node child : ((Inner) node).children) {
+      int end = start + child.count;
+      boolean target = !inserted && (from < end || (from == to && from == end));
+      if(target) {
+        inserted = true;
+        children.addAll(replace(child, Math.max(from - start, 0), Math.min(to - start, child.count), values));
+      } else if(end <= from || start >= to) {
+        children.add(child);
+      } else if(start < from || end > to) {
+        children.addAll(replace(child, Math.max(from - start, 0), Math.min(to - start, child.count), EMPTY));
+      }
+      start = end;
+    }
+
+    return group(rebalance(children));
+  }
+
+  private static List<Node> leaves(int[] values) {
+    List<Node> leaves = new ArrayList<>();
+    int parts = (values.length + MAX_WIDTH - 1) / MAX_WIDTH;
+    for(int i = 0; i < parts; i++) {
+      leaves.add(new Leaf(Arrays.copyOfRange(values, (int) ((long) values.length * i / parts), (int) ((long) values.length * (i+1) / parts))));
+    }
+    return leaves;
+  }
+
+  private static List<Node> group(List<Node> nodes) {
+    List<Node> groups = new ArrayList<>();
+    int parts = (nodes.size() + MAX_WIDTH - 1) / MAX_WIDTH;
+    for(int i = 0; i < parts; i++) {
+      List<Node> part = nodes.subList(nodes.size() * i / parts, nodes.size() * (i+1) / parts);
+      groups.add(new Inner(part.toArray(new Node[0])));
+    }
+    return groups;
+  }
+
+  private static List<Node> rebalance(List<Node> nodes) {
+    List<Node> result = new ArrayList<>();
+    for(Node node : nodes) {
+      Node last = result.isEmpty() ? null : result.get(result.size()-1);
+      if(last == null || (node.width() >= MIN_WIDTH && last.width() >= MIN_WIDTH)) {
+        result.add(node);
+        continue;
+      }
+
+      result.remove(result.size()-1);
+      if(node instanceof Leaf) {
+        int[] left = ((Leaf) last).values;
+        int[] right = ((Leaf) node).values;
+        int[] merged = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, merged, left.length, right.length);
+        result.addAll(leaves(merged));
+      } else {
+        Node[] left = ((Inner) last).children;
+        Node[] right = ((Inner) node).children;
+        Node[] merged = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, merged, left.length, right.length);
+        result.addAll(group(Arrays.asList(merged)));
+      }
+    }
+    return result;
+  }
+
+  private static abstract class Node {
+    protected final int count;
+    protected final long sum;
+
+    protected Node(int count, long sum) {
+      this.count = count;
+      this.sum = sum;
+    }
+
+    protected abstract int width();
+  }
+
+  private static class Leaf extends Node {
+    private final int[] values;
+
+    private Leaf(int[] values) {
+      super(values.length, Arrays.stream(values).asLongStream().sum());
+      this.values = values;
+    }
+
+    @Override
+    protected int width() {
+      return values.length;
+    }
+  }
+
+  private static class Inner extends Node {
+    private final Node[] children;
+
+    private Inner(Node[] children) {
+      super(Arrays.stream(children).mapToInt(c -> c.count).sum(), Arrays.stream(children).mapToLong(c -> c.sum).sum());
+      this.children = children;
+    }
+
+    @Override
+    protected int width() {
+      return children.length;
+    }
+  }
+
+  private static class LeafIterator implements PrimitiveIterator.OfInt {
+    private final Inner[] path;
+    private final int[] positions;
+    private int depth;
+    private int[] values;
+    private int index;
+    private int remaining;
+
+    private LeafIterator(Node root, int from) {
+      int height = 0;
+      for(Node node = root; node instanceof Inner; node = ((Inner) node).children[0]) height++;
+
+      this.path = new Inner[height];
+      this.positions = new int[height];
+      this.remaining = root.count - from;
+
+      Node node = root;
+      while(node instanceof Inner) {
+        Node[] children = ((Inner) node).children;
+        int i = 0;
+        while(i < children.length-1 && from >= children[i].count) {
+          from -= children[i].count;
+          i++;
+        }
+        path[depth] = (Inner) node;
+        positions[depth++] = i;
+        node = children[i];
+      }
+      this.values = ((Leaf) node).values;
+      this.index = from;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return remaining > 0;
+    }
+
+    @Override
+    public int nextInt() {
+      if(!hasNext()) throw new NoSuchElementException("No more elements to iterate over.");
+
+      while(index == values.length) nextLeaf();
+      remaining--;
+      return values[index++];
+    }
+
+    private void nextLeaf() {
+      while(positions[depth-1] == path[depth-1].children.length-1) depth--;
+
+      Node node = path[depth-1].children[++positions[depth-1]];
+      while(node instanceof Inner) {
+        path[depth] = (Inner) node;
+        positions[depth++] = 0;
+        node = ((Inner) node).children[0];
+      }
+      values = ((Leaf) node).values;
+      index = 0;
+    }
+  }
+}
@@ -0,0 +1,323 @@
+package model.text;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Document text stored as a sequence of pieces pointing either into the original buffer or into the
+ * append-only add buffer. Pieces are kept in a treap ordered by document position, so locating an offset,
+ * inserting and deleting all cost O(log pieces) and never copy the original text.
+ */
+public class PieceTable {
+  private final AddBuffer added;
+  private Piece root;
+
+  public PieceTable(TextBuffer original) {
+    if(original == null) throw new IllegalArgumentException("Original buffer can't be null.");
+
+    this.added = new AddBuffer();
+    this.root = original.length() == 0 ? null : new Piece(original, 0, original.length());
+  }
+
+  public PieceTable(String text) {
+    this(new StringTextBuffer(text));
+  }
+
+  private PieceTable(AddBuffer added, Piece root) {
+    this.added = added;
+    this.root = root;
+  }
+
+  /**
+   * Returns a table with the same text in O(1). Pieces are shared and never modified, and the add buffer is
+   * only appended to, so later edits to either table don't show up in the other.
+   */
+  public PieceTable copy() {
+    return new PieceTable(added, root);
+  }
+
+  public long length() {
+    return size(root);
+  }
+
+  public char charAt(long offset) {
+    if(offset < 0 || offset >= length()) throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the document.");
+
+    Piece node = root;
+    while(true) {
+      long leftSize = size(node.left);
+      if(offset < leftSize) {
+        node = node.left;
+        continue;
+      }
+      offset -= leftSize;
+      if(offset < node.length) return node.buffer.charAt(node.start + offset);
+
+      offset -= node.length;
+      node = node.right;
+    }
+  }
+
+  public String substring(long start, long end) {
+    checkRange(start, end);
+
+    StringBuilder builder = new StringBuilder((int) (end - start));
+    collect(root, start, end, builder);
+    return builder.toString();
+  }
+
+  public void appendTo(StringBuilder builder, long start, long end) {
+    if(builder == null) throw new IllegalArgumentException("Builder can't be null.");
+    checkRange(start, end);
+
+    collect(root, start, end, builder);
+  }
+
+  public void insert(long offset, String text) {
+    if(text == null) throw new IllegalArgumentException("Text can't be null.");
+    checkRange(offset, offset);
+    if(text.isEmpty()) return;
+
+    long bufferStart = added.append(text);
+    insertPiece(offset, added, bufferStart, text.length());
+  }
+
+  public void insert(long offset, TextBuffer buffer, long start, long end) {
+    if(buffer == null) throw new IllegalArgumentException("Buffer can't be null.");
+    if(start < 0 || end < start || end > buffer.length()) throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is outside of the buffer.");
+    checkRange(offset, offset);
+    if(start == end) return;
+
+    insertPiece(offset, buffer, start, end - start);
+  }
+
+  private void insertPiece(long offset, TextBuffer buffer, long start, long length) {
+    Piece[] parts = split(root, offset);
+    Piece left = parts[0];
+    Piece last = rightmost(left);
+    if(last != null && last.buffer == buffer && last.start + last.length == start) {
+      left = extendRightmost(left, length);
+    } else {
+      left = merge(left, new Piece(buffer, start, length));
+    }
+    root = merge(left, parts[1]);
+  }
+
+  public void delete(long start, long end) {
+    checkRange(start, end);
+    if(start == end) return;
+
+    Piece[] head = split(root, start);
+    Piece[] tail = split(head[1], end - start);
+    root = merge(head[0], tail[1]);
+  }
+
+  /**
+   * Replaces several ranges at once, given as start and end pairs in document order. Range {@code i} gets the
+   * part of {@code buffer} that ends at {@code bufferEnds[i]} and starts where the previous part ended. The
+   * pieces between the first and the last range are rebuilt in one pass, which costs O(pieces in between +
+   * ranges) instead of O(ranges log pieces) for deleting and inserting every range on its own.
+   */
+  public void replace(long[] ranges, TextBuffer buffer, int[] bufferEnds) {
+    if(ranges == null || bufferEnds == null) throw new IllegalArgumentException("Ranges can't be null.");
+    if(buffer == null) throw new IllegalArgumentException("Buffer can't be null.");
+    if(ranges.length != 2 * bufferEnds.length) throw new IllegalArgumentException("Every range needs its own part of the buffer.");
+    if(bufferEnds.length == 0) return;
+
+    long spanStart = ranges[0];
+    long spanEnd = ranges[ranges.length - 1];
+    checkRange(spanStart, spanEnd);
+    if(bufferEnds[bufferEnds.length - 1] > buffer.length()) throw new IndexOutOfBoundsException("Parts reach past the end of the buffer.");
+
+    Piece[] head = split(root, spanStart);
+    Piece[] tail = split(head[1], spanEnd - spanStart);
+    List<Piece> kept = new ArrayList<>();
+    collect(tail[0], kept);
+
+    List<Piece> pieces = new ArrayList<>();
+    int next = 0;
+    long nextStart = 0;
+    long from = 0;
+    for(int i = 0; i < bufferEnds.length; i++) {
+      long start = ranges[2*i] - spanStart;
+      long end = ranges[2*i + 1] - spanStart;
+      if(start < from || end < start) throw new IllegalArgumentException("Ranges must be in order and can't overlap.");
+
+      // keeps the text between the previous range and this one, skipping what the previous range removed
+      while(next < kept.size() && nextStart < start) {
+        Piece piece = kept.get(next);
+        long pieceEnd = nextStart + piece.length;
+        long copyFrom = Math.max(from, nextStart);
+        long copyTo = Math.min(start, pieceEnd);
+        if(copyFrom < copyTo) addPiece(pieces, piece.buffer, piece.start + copyFrom - nextStart, copyTo - copyFrom);
+        if(pieceEnd > start) break;
+
+        nextStart = pieceEnd;
+        next++;
+      }
+
+      int partStart = i == 0 ? 0 : bufferEnds[i - 1];
+      if(bufferEnds[i] < partStart) throw new IllegalArgumentException("Parts of the buffer must be in order.");
+      addPiece(pieces, buffer, partStart, bufferEnds[i] - partStart);
+      from = end;
+    }
+
+    int[] priorities = new int[pieces.size()];
+    for(int i = 0; i < priorities.length; i++) {
+      priorities[i] = ThreadLocalRandom.current().nextInt();
+    }
+    Arrays.sort(priorities);
+    int[] nextPriority = {priorities.length};
+    root = merge(merge(head[0], build(pieces, 0, pieces.size(), priorities, nextPriority)), tail[1]);
+  }
+
+  private static void addPiece(List<Piece> pieces, TextBuffer buffer, long start, long length) {
+    if(length == 0) return;
+
+    Piece last = pieces.isEmpty() ? null : pieces.get(pieces.size() - 1);
+    if(last != null && last.buffer == buffer && last.start + last.length == start) {
+      pieces.set(pieces.size() - 1, new Piece(buffer, last.start, last.length + length));
+      return;
+    }
+    pieces.add(new Piece(buffer, start, length));
+  }
+
+  private static void collect(Piece node, List<Piece> pieces) {
+    if(node == null) return;
+
+    collect(node.left, pieces);
+    pieces.add(node);
+    collect(node.right, pieces);
+  }
+
+  /**
+   * Builds a balanced treap over the pieces. Priorities are handed out from the largest down in pre-order, so
+   * every node outranks its children.
+   */
+  private static Piece build(List<Piece> pieces, int from, int to, int[] priorities, int[] nextPriority) {
+    if(from == to) return null;
+
+    int middle = (from + to) >>> 1;
+    Piece piece = pieces.get(middle);
+    int priority = priorities[--nextPriority[0]];
+    Piece left = build(pieces, from, middle, priorities, nextPriority);
+    Piece right = build(pieces, middle + 1, to, priorities, nextPriority);
+    return new Piece(piece.buffer, piece.start, piece.length, priority, left, right);
+  }
+
+  public void forEachPiece(PieceVisitor visitor) throws IOException {
+    if(visitor == null) throw new IllegalArgumentException("Visitor can't be null.");
+
+    visit(root, visitor);
+  }
+
+  private static void visit(Piece node, PieceVisitor visitor) throws IOException {
+    if(node == null) return;
+
+    visit(node.left, visitor);
+    visitor.visit(node.buffer, node.start, node.start + node.length);
+    visit(node.right, visitor);
+  }
+
+  private void checkRange(long start, long end) {
+    if(start < 0 || end < start || end > length()) {
+      throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") is outside of the document.");
+    }
+  }
+
+  private static long size(Piece node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static Piece rightmost(Piece node) {
+    if(node == null) return null;
+
+    while(node.right != null) node = node.right;
+    return node;
+  }
+
+  private static Piece extendRightmost(Piece node, long delta) {
+    if(node.right == null) return new Piece(node.buffer, node.start, node.length + delta, node.priority, node.left, null);
+
+    return node.withChildren(node.left, extendRightmost(node.right, delta));
+  }
+
+  private static void collect(Piece node, long start, long end, StringBuilder builder) {
+    if(node == null || start >= end) return;
+
+    long leftSize = size(node.left);
+    if(start < leftSize) collect(node.left, start, Math.min(end, leftSize), builder);
+
+    long pieceEnd = leftSize + node.length;
+    long from = Math.max(start, leftSize);
+    long to = Math.min(end, pieceEnd);
+    if(from < to) node.buffer.appendTo(builder, node.start + from - leftSize, node.start + to - leftSize);
+
+    if(end > pieceEnd) collect(node.right, Math.max(start, pieceEnd) - pieceEnd, end - pieceEnd, builder);
+  }
+
+  private static Piece[] split(Piece node, long offset) {
+    if(node == null) return new Piece[] {null, null};
+
+    long leftSize = size(node.left);
+    if(offset <= leftSize) {
+      Piece[] parts = split(node.left, offset);
+      return new Piece[] {parts[0], node.withChildren(parts[1], node.right)};
+    }
+
+    long pieceEnd = leftSize + node.length;
+    if(offset >= pieceEnd) {
+      Piece[] parts = split(node.right, offset - pieceEnd);
+      return new Piece[] {node.withChildren(node.left, parts[0]), parts[1]};
+    }
+
+    long cut = offset - leftSize;
+    Piece head = new Piece(node.buffer, node.start, cut, node.priority, node.left, null);
+    Piece tail = merge(new Piece(node.buffer, node.start + cut, node.length - cut), node.right);
+    return new Piece[] {head, tail};
+  }
+
+  private static Piece merge(Piece left, Piece right) {
+    if(left == null) return right;
+    if(right == null) return left;
+
+    if(left.priority > right.priority) return left.withChildren(left.left, merge(left.right, right));
+
+    return right.withChildren(merge(left, right.left), right.right);
+  }
+
+  private static class Piece {
+    private final TextBuffer buffer;
+    private final long start;
+    private final long length;
+    private final int priority;
+    private final Piece left;
+    private final Piece right;
+    private final long size;
+
+    private Piece(TextBuffer buffer, long start, long length) {
+      this(buffer, start, length, ThreadLocalRandom.current().nextInt(), null, null);
+    }
+
+    private Piece(TextBuffer buffer, long start, long length, int priority, Piece left, Piece right) {
+      this.buffer = buffer;
+      this.start = start;
+      this.length = length;
+      this.priority = priority;
+      this.left = left;
+      this.right = right;
+      this.size = size(left) + length + size(right);
+    }
+
+    private Piece withChildren(Piece left, Piece right) {
+      return new Piece(buffer, start, length, priority, left, right);
+    }
+  }
+
+  public interface PieceVisitor {
+    void visit(TextBuffer buffer, long start, long end) throws IOException;
+  }
+}
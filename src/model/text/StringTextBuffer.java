@@ -0,0 +1,26 @@
+package model.text;
+
+public class StringTextBuffer implements TextBuffer {
+  private final String text;
+
+  public StringTextBuffer(String text) {
+    if(text == null) throw new IllegalArgumentException("Text can't be null.");
+
+    this.text = text;
+  }
+
+  @Override
+  public long length() {
+    return text.length();
+  }
+
+  @Override
+  public char charAt(long index) {
+    return text.charAt((int) index);
+  }
+
+  @Override
+  public void appendTo(StringBuilder builder, long start, long end) {
+    builder.append(text, (int) start, (int) end);
+  }
+}
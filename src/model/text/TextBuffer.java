@@ -0,0 +1,7 @@
+package model.text;
+
+public interface TextBuffer {
+  long length();
+  char charAt(long index);
+  void appendTo(StringBuilder builder, long start, long end);
+}
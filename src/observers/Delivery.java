@@ -0,0 +1,12 @@
+package observers;
+
+public enum Delivery {
+  /**
+   * Observer is notified synchronously inside every change.
+   */
+  IMMEDIATE,
+  /**
+   * Changes only mark the observer dirty, it is notified at most once per frame on the event dispatch thread.
+   */
+  COALESCED
+}
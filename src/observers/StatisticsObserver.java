@@ -0,0 +1,7 @@
+package observers;
+
+import model.DocumentStatistics;
+
+public interface StatisticsObserver {
+  void updateStatistics(DocumentStatistics statistics);
+}
@@ -0,0 +1,7 @@
+package observers;
+
+import model.TextChangeEvent;
+
+public interface TextChangeObserver {
+  void textChanged(TextChangeEvent event);
+}
@@ -0,0 +1,37 @@
+package plugins;
+
+import model.TextEdits;
+import model.TextSnapshot;
+
+/**
+ * Plugin that can also run off the event dispatch thread. {@link PluginExecutor} runs it on a worker thread
+ * against a snapshot of the document and applies the recorded edits afterwards as one change.
+ */
+public interface BackgroundPlugin extends Plugin {
+  /**
+   * Runs the plugin on a worker thread. It reads the document from {@code snapshot} only, records its changes
+   * against the snapshot's offsets in {@code edits}, reports how far it got through {@code progress} and
+   * should return early once that is cancelled.
+   */
+  void execute(TextSnapshot snapshot, TextEdits edits, Progress progress);
+
+  interface Progress {
+    Progress NONE = new Progress() {
+      @Override
+      public void report(double done) {
+      }
+
+      @Override
+      public boolean isCancelled() {
+        return false;
+      }
+    };
+
+    /**
+     * Reports the finished part of the work, from 0 to 1.
+     */
+    void report(double done);
+
+    boolean isCancelled();
+  }
+}
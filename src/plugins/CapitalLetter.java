@@ -1,13 +1,14 @@
 package plugins;
 
-import model.Location;
+import model.TextEdits;
 import model.TextEditorModel;
+import model.TextSnapshot;
 import model.clipboard.ClipboardStack;
 import model.manager.UndoManager;
 
-import java.util.Iterator;
+public class CapitalLetter implements BackgroundPlugin {
+  private static final int CHUNK_LINES = 4096;
 
-public class CapitalLetter implements Plugin {
   @Override
   public String getName() {
     return "Capital letter";
@@ -20,24 +21,33 @@ public class CapitalLetter implements Plugin {
 
   @Override
   public void execute(TextEditorModel model, UndoManager undoManager, ClipboardStack clipboardStack) {
-    Iterator<String> iter = model.allLines();
+    TextEdits edits = new TextEdits();
+    execute(model.snapshot(), edits, Progress.NONE);
+    model.apply(edits);
+  }
+
+  @Override
+  public void execute(TextSnapshot snapshot, TextEdits edits, Progress progress) {
+    StringBuilder text = new StringBuilder();
+    int lineCount = snapshot.getLineCount();
+    for(int from = 0; from < lineCount && !progress.isCancelled(); from += CHUNK_LINES) {
+      int to = Math.min(from + CHUNK_LINES, lineCount);
+      long start = snapshot.offsetOf(from);
+      long end = snapshot.offsetOf(to - 1) + snapshot.getLineLength(to - 1);
+      text.setLength(0);
+      snapshot.appendText(text, start, end);
 
-    int row = 0;
-    while(iter.hasNext()) {
-      String line = iter.next();
-      int col = 0;
+      // chunks end at a line break, so every chunk starts at the start of a word
       boolean spaceFound = true;
-      for(char c : line.toCharArray()) {
+      for(int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
         if(Character.isLetter(c) && spaceFound) {
           spaceFound = false;
-          model.moveCursor(new Location(row, col));
-          model.deleteAfter();
-          model.insert(Character.toUpperCase(c));
+          char upper = Character.toUpperCase(c);
+          if(upper != c) edits.replace(start + i, start + i + 1, String.valueOf(upper));
         } else if(Character.isWhitespace(c)) spaceFound = true;
-
-        col++;
       }
-      row++;
+      progress.report((double) to / lineCount);
     }
   }
 }
@@ -0,0 +1,200 @@
+package plugins;
+
+import model.TextChangeEvent;
+import model.TextEdits;
+import model.TextEditorModel;
+import model.TextSnapshot;
+import model.clipboard.ClipboardStack;
+import model.manager.UndoManager;
+import observers.Delivery;
+import observers.TextChangeObserver;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs plugins without blocking the event dispatch thread. A {@link BackgroundPlugin} reads a snapshot of the
+ * document on a worker thread and records its changes, which are then applied on the event dispatch thread as one edit.
+ * Edits the user makes in the meantime are collected, and the plugin's changes are moved past them, or thrown
+ * away if they overlap. Other plugins are run on the calling thread as before.
+ */
+public class PluginExecutor {
+  private final TextEditorModel model;
+  private final ClipboardStack clipboard;
+  private final ExecutorService worker;
+
+  public PluginExecutor(TextEditorModel model, ClipboardStack clipboard) {
+    if(model == null) throw new IllegalArgumentException("Model can't be null.");
+
+    this.model = model;
+    this.clipboard = clipboard;
+    this.worker = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "plugin-runner");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Starts running a plugin. Has to be called on the event dispatch thread, which is also where the listener
+   * is called from.
+   */
+  public Task execute(Plugin plugin, Listener listener) {
+    if(plugin == null) throw new IllegalArgumentException("Plugin can't be null.");
+    if(listener == null) throw new IllegalArgumentException("Listener can't be null.");
+
+    Task task = new Task(plugin, listener);
+    try {
+      Plugin resolved = PluginRegistry.resolve(plugin);
+      if(resolved instanceof BackgroundPlugin) {
+        task.background = (BackgroundPlugin) resolved;
+        task.snapshot = model.snapshot();
+        model.addTextChangeObserver(task.observer, Delivery.IMMEDIATE);
+        worker.execute(task::run);
+      } else {
+        resolved.execute(model, UndoManager.instance(), clipboard);
+        task.finish(Outcome.APPLIED);
+      }
+    } catch(RuntimeException e) {
+      model.removeTextChangeObserver(task.observer);
+      task.fail(e);
+    }
+    return task;
+  }
+
+  public enum Outcome {
+    APPLIED,
+    CANCELLED,
+    REJECTED
+  }
+
+  public interface Listener {
+    void progressChanged(double done);
+
+    void finished(Outcome outcome);
+
+    void failed(Throwable e);
+  }
+
+  public class Task {
+    private final Plugin plugin;
+    private final Listener listener;
+    private BackgroundPlugin background;
+    private TextSnapshot snapshot;
+    private final TextEdits edits;
+    private final List<TextChangeEvent> concurrentChanges;
+    private final TextChangeObserver observer;
+    private final BackgroundPlugin.Progress progress;
+    private volatile boolean cancelled;
+    private volatile int reported;
+    private boolean done;
+
+    private Task(Plugin plugin, Listener listener) {
+      this.plugin = plugin;
+      this.listener = listener;
+      this.background = null;
+      this.snapshot = null;
+      this.edits = new TextEdits();
+      this.concurrentChanges = new ArrayList<>();
+      this.observer = event -> {
+        if(event.getVersion() > snapshot.getVersion()) concurrentChanges.add(event);
+      };
+      this.progress = new BackgroundPlugin.Progress() {
+        @Override
+        public void report(double done) {
+          // only changes of a whole percent are passed on, so busy plugins don't flood the event queue
+          int percent = (int) (Math.max(0, Math.min(done, 1)) * 100);
+          if(percent == reported) return;
+
+          reported = percent;
+          SwingUtilities.invokeLater(() -> {
+            if(!Task.this.done) listener.progressChanged(percent / 100.0);
+          });
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return cancelled;
+        }
+      };
+      this.cancelled = false;
+      this.reported = 0;
+      this.done = false;
+    }
+
+    public Plugin getPlugin() {
+      return plugin;
+    }
+
+    /**
+     * Asks the plugin to stop. Whatever it did so far is thrown away. Can be called from any thread.
+     */
+    public void cancel() {
+      cancelled = true;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Tells whether the task has finished. Only meaningful on the event dispatch thread.
+     */
+    public boolean isDone() {
+      return done;
+    }
+
+    private void run() {
+      try {
+        background.execute(snapshot, edits, progress);
+      } catch(Throwable e) {
+        // whatever went wrong, the observer has to go and the listener has to hear about it
+        SwingUtilities.invokeLater(() -> {
+          model.removeTextChangeObserver(observer);
+          fail(e);
+        });
+        return;
+      }
+      SwingUtilities.invokeLater(this::applyEdits);
+    }
+
+    private void applyEdits() {
+      model.removeTextChangeObserver(observer);
+      if(cancelled) {
+        finish(Outcome.CANCELLED);
+        return;
+      }
+      if(!model.isEditable()) {
+        finish(Outcome.REJECTED);
+        return;
+      }
+
+      for(TextChangeEvent change : concurrentChanges) {
+        if(!edits.rebase(change)) {
+          finish(Outcome.REJECTED);
+          return;
+        }
+      }
+      try {
+        model.apply(edits);
+      } catch(RuntimeException e) {
+        fail(e);
+        return;
+      }
+      finish(Outcome.APPLIED);
+    }
+
+    private void finish(Outcome outcome) {
+      done = true;
+      listener.finished(outcome);
+    }
+
+    private void fail(Throwable e) {
+      done = true;
+      listener.failed(e);
+    }
+  }
+}
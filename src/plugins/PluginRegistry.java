@@ -0,0 +1,238 @@
+package plugins;
+
+import model.TextEditorModel;
+import model.clipboard.ClipboardStack;
+import model.manager.UndoManager;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Plugins found in a folder, one jar per plugin with the class {@code plugins.<jar name>} in it. Name,
+ * description and class of every jar are kept in an index file together with the jar's modification time,
+ * size and hash, so listing plugins only reads the index and the folder. A jar is only opened when it is new
+ * or changed, and a plugin class is otherwise loaded, with its own class loader, the first time it is used.
+ */
+public class PluginRegistry {
+  private static final String INDEX_FILE = ".index";
+  private final Path folder;
+  private final Path indexFile;
+
+  public PluginRegistry(Path folder) {
+    if(folder == null) throw new IllegalArgumentException("Folder can't be null.");
+
+    this.folder = folder;
+    this.indexFile = folder.resolve(INDEX_FILE);
+  }
+
+  /**
+   * Lists the plugins in the folder, updating the index for jars that were added, changed or removed. Jars
+   * that can't be read or don't contain a plugin are left out, and the latter are remembered in the index so
+   * they aren't opened again until they change.
+   */
+  public List<Plugin> scan() {
+    List<Plugin> plugins = new ArrayList<>();
+    if(!Files.isDirectory(folder)) return plugins;
+
+    Map<String, Entry> index = readIndex();
+    boolean changed = false;
+    List<Path> files = new ArrayList<>();
+    try(Stream<Path> list = Files.list(folder)) {
+      list.filter(file -> !file.getFileName().toString().startsWith(".")).sorted().forEach(files::add);
+    } catch(IOException e) {
+      e.printStackTrace();
+      return plugins;
+    }
+
+    Map<String, Entry> current = new TreeMap<>();
+    for(Path file : files) {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if(!attributes.isRegularFile()) continue;
+
+        String fileName = file.getFileName().toString();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry entry = index.get(fileName);
+        if(entry == null || entry.modified != modified || entry.size != attributes.size()) {
+          String hash = hash(file);
+          entry = entry != null && entry.hash.equals(hash)
+              ? new Entry(file, modified, attributes.size(), hash, entry.className, entry.name, entry.description)
+              : describe(file, modified, attributes.size(), hash);
+          changed = true;
+        }
+        current.put(fileName, entry);
+        if(!entry.className.isEmpty()) plugins.add(entry);
+      } catch(IOException e) {
+        e.printStackTrace();
+      }
+    }
+
+    if(changed || !current.keySet().equals(index.keySet())) writeIndex(current);
+    return plugins;
+  }
+
+  /**
+   * Returns the plugin behind one listed by a registry, loading it if that hasn't happened yet, so what kind
+   * of plugin it is can be checked. Other plugins are returned as they are.
+   */
+  static Plugin resolve(Plugin plugin) {
+    return plugin instanceof Entry ? ((Entry) plugin).plugin() : plugin;
+  }
+
+  /**
+   * Loads the plugin from a new or changed jar to learn its name and description. A jar without a plugin is
+   * described by an entry without a class.
+   */
+  private Entry describe(Path file, long modified, long size, String hash) throws IOException {
+    String className = "plugins." + file.getFileName().toString().split("\\.")[0];
+    Entry entry = new Entry(file, modified, size, hash, className, null, null);
+    try {
+      Plugin plugin = entry.instance();
+      return new Entry(file, modified, size, hash, className, plugin.getName(), plugin.getDescription(), entry);
+    } catch(ReflectiveOperationException | LinkageError | RuntimeException e) {
+      e.printStackTrace();
+      return new Entry(file, modified, size, hash, "", null, null);
+    }
+  }
+
+  private Map<String, Entry> readIndex() {
+    Map<String, Entry> index = new HashMap<>();
+    if(!Files.isRegularFile(indexFile)) return index;
+
+    try {
+      for(String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t", -1);
+        if(fields.length != 7) continue;
+
+        try {
+          index.put(fields[0], new Entry(folder.resolve(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+              fields[3], fields[4], fields[5], fields[6]));
+        } catch(NumberFormatException e) {
+          // a damaged line only costs opening that jar again
+        }
+      }
+    } catch(IOException e) {
+      e.printStackTrace();
+    }
+    return index;
+  }
+
+  private void writeIndex(Map<String, Entry> index) {
+    try(BufferedWriter writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+      for(Map.Entry<String, Entry> e : index.entrySet()) {
+        Entry entry = e.getValue();
+        writer.write(String.join("\t", e.getKey(), Long.toString(entry.modified), Long.toString(entry.size),
+            entry.hash, entry.className, clean(entry.name), clean(entry.description)));
+        writer.newLine();
+      }
+    } catch(IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static String clean(String text) {
+    return text == null ? "" : text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+  }
+
+  private static String hash(Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    byte[] buffer = new byte[1 << 16];
+    try(InputStream input = Files.newInputStream(file)) {
+      int read;
+      while((read = input.read(buffer)) > 0) digest.update(buffer, 0, read);
+    }
+
+    StringBuilder hex = new StringBuilder();
+    for(byte b : digest.digest()) hex.append(String.format("%02x", b));
+    return hex.toString();
+  }
+
+  /**
+   * Plugin known from the index. Name and description come from the index, the plugin itself is loaded the
+   * first time anything else is asked of it.
+   */
+  private class Entry implements Plugin {
+    private final Path file;
+    private final long modified;
+    private final long size;
+    private final String hash;
+    private final String className;
+    private final String name;
+    private final String description;
+    private Plugin instance;
+
+    private Entry(Path file, long modified, long size, String hash, String className, String name, String description) {
+      this.file = file;
+      this.modified = modified;
+      this.size = size;
+      this.hash = hash;
+      this.className = className;
+      this.name = name;
+      this.description = description;
+      this.instance = null;
+    }
+
+    private Entry(Path file, long modified, long size, String hash, String className, String name, String description, Entry loaded) {
+      this(file, modified, size, hash, className, name, description);
+      this.instance = loaded.instance;
+    }
+
+    private synchronized Plugin instance() throws IOException, ReflectiveOperationException {
+      if(instance != null) return instance;
+
+      URLClassLoader loader = new URLClassLoader(
+          new URL[] {file.toUri().toURL(), folder.toUri().toURL()},
+          PluginRegistry.class.getClassLoader());
+      Class<? extends Plugin> type = loader.loadClass(className).asSubclass(Plugin.class);
+      instance = type.getConstructor().newInstance();
+      return instance;
+    }
+
+    private Plugin plugin() {
+      try {
+        return instance();
+      } catch(IOException e) {
+        throw new UncheckedIOException("Couldn't read plugin " + file + ".", e);
+      } catch(ReflectiveOperationException | LinkageError e) {
+        throw new IllegalStateException("Couldn't load plugin " + className + " from " + file + ".", e);
+      }
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getDescription() {
+      return description;
+    }
+
+    @Override
+    public void execute(TextEditorModel model, UndoManager undoManager, ClipboardStack clipboardStack) {
+      plugin().execute(model, undoManager, clipboardStack);
+    }
+  }
+}
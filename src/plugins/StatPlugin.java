@@ -1,13 +1,13 @@
 package plugins;
 
 import components.Frame;
+import model.DocumentStatistics;
 import model.TextEditorModel;
 import model.clipboard.ClipboardStack;
 import model.manager.UndoManager;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
 
 public class StatPlugin implements Plugin {
   @Override
@@ -22,19 +22,11 @@ public class StatPlugin implements Plugin {
 
   @Override
   public void execute(TextEditorModel model, UndoManager undoManager, ClipboardStack clipboardStack) {
-    List<String> lines = model.getLines();
-    int lineCount = lines.size(), wordCount = 0, letterCount = 0;
-    for(String line : lines) {
-      letterCount += line.length() + 1;
-      String[] split = line.split("\s+");
-      if(split.length != 1 || !split[0].equals("")) {
-        wordCount += split.length;
-      }
-    }
-    letterCount--;
+    DocumentStatistics statistics = model.getStatistics();
 
     JOptionPane.showMessageDialog(null,
-        String.format("Line count: %d%nWord count: %d%nLetter count: %d", lineCount, wordCount, letterCount),
+        String.format("Line count: %d%nWord count: %d%nLetter count: %d%nUTF-16 units: %d",
+            statistics.getLineCount(), statistics.getWordCount(), statistics.getCodePointCount(), statistics.getCharCount()),
         "Stats",
         JOptionPane.INFORMATION_MESSAGE);
   }